@@ -0,0 +1,261 @@
+/*
+ * @(#) AnalysisBenchmark.java
+ *
+ */
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+
+import analysis.CloneDetector;
+import graph.export.GModelExporter;
+import graph.model.GModel;
+import graph.model.GModelBuilder;
+import graph.model.GModelSnapshot;
+import graph.model.GNode;
+import visitor.CloneFingerprintVisitor;
+import visitor.DeclarationVisitor;
+
+/**
+ * Headless benchmarks for the analysis pipeline: AST parsing, model building by
+ * DeclarationVisitor, connection label lookup, node map insertion, snapshot write and
+ * load, clone grouping and streaming export. Every benchmark
+ * runs against generated source trees and any source directories given on the
+ * command line, and reports throughput and the bytes allocated per unit of work.
+ * <p>
+ * Run from the plugin directory with org.eclipse.jdt.core and its dependencies on the
+ * classpath, together with the compiled src and benchmark folders:
+ * <pre>
+ * java -Xmx4g bench.AnalysisBenchmark 100,1000,10000 Example-source-sample1 Example-source-sample2
+ * </pre>
+ */
+public class AnalysisBenchmark {
+   private static final int    WARMUP_ITERATIONS  = 3;
+   private static final int    MEASURE_ITERATIONS = 5;
+   private static final String PROJECT_NAME       = "bench";
+   // Exports are measured without disk I/O.
+   private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) {
+         int n = src.remaining();
+         src.position(src.limit());
+         return n;
+      }
+
+      @Override
+      public boolean isOpen() {
+         return true;
+      }
+
+      @Override
+      public void close() {
+      }
+   };
+
+   interface Op {
+      /** @return the units of work done, e.g. parsed files or looked-up labels. */
+      int run() throws Exception;
+   }
+
+   public static void main(String[] args) throws Exception {
+      String sizes = args.length > 0 ? args[0] : "100,1000,10000";
+      for (String size : sizes.split(",")) {
+         int classes = Integer.parseInt(size.trim());
+         File root = Files.createTempDirectory("cdpo-bench-").toFile();
+         SyntheticSources.generate(root, classes);
+         run("synthetic-" + classes, root);
+      }
+      for (int i = 1; i < args.length; i++) {
+         File root = new File(args[i]);
+         run(root.getName(), root);
+      }
+   }
+
+   private static void run(String input, File root) throws Exception {
+      String[] files = javaFiles(root);
+      String[] sourceRoots = { root.getAbsolutePath() };
+
+      measure(input, "parse", "file", () -> parse(sourceRoots, files, null, false));
+      measure(input, "parse+visit", "file", () -> {
+         GModelBuilder builder = new GModelBuilder(0);
+         return parse(sourceRoots, files, builder, false);
+      });
+      measure(input, "parse-structure", "file", () -> {
+         GModelBuilder builder = new GModelBuilder(0);
+         return parse(sourceRoots, files, builder, true);
+      });
+
+      GModelBuilder builder = new GModelBuilder(0);
+      parse(sourceRoots, files, builder, false);
+      GModel model = builder.build();
+      measure(input, "labelLookup", "edge", () -> {
+         int found = 0;
+         for (GNode n : model.getNodes()) {
+            for (int i = 0, degree = model.getOutDegree(n); i < degree; i++) {
+               if (model.getConnectionOffset(n.getKey(), model.getConnectedTo(n, i).getKey()) >= 0) {
+                  found++;
+               }
+            }
+         }
+         return found;
+      });
+      measure(input, "nodeInsert", "node", () -> {
+         GModelBuilder copy = new GModelBuilder(0);
+         for (GNode n : model.getNodes()) {
+            copy.addNode(n);
+         }
+         copyConnections(model, copy);
+         return copy.build().getNodes().size();
+      });
+      retained(input, model);
+      File snapshot = File.createTempFile("cdpo-bench-", ".snap");
+      snapshot.deleteOnExit();
+      measure(input, "snapshotWrite", "node", () -> {
+         GModelSnapshot.write(model, 0, snapshot);
+         return model.getNodes().size();
+      });
+      measure(input, "snapshotLoad", "node", () -> GModelSnapshot.read(snapshot, 0, 0).getNodes().size());
+      for (GModelExporter.Format format : GModelExporter.Format.values()) {
+         measure(input, "export-" + format.name().toLowerCase(), "edge", () -> new GModelExporter(model).export(DISCARD, format));
+      }
+
+      // The synthetic method bodies are small, so every body is fingerprinted.
+      List<CloneFingerprintVisitor.Fingerprint> fingerprints = fingerprint(sourceRoots, files, 1);
+      CloneDetector detector = new CloneDetector();
+      measure(input, "cloneDetect", "method", () -> {
+         detector.detect(fingerprints);
+         return fingerprints.size();
+      });
+   }
+
+   /**
+    * Reports the heap retained by a copy of the model per connection. The nodes are
+    * shared with the original, so this is mostly the connection storage.
+    */
+   private static void retained(String input, GModel model) {
+      long before = usedHeap();
+      GModelBuilder copy = new GModelBuilder(0);
+      for (GNode n : model.getNodes()) {
+         copy.addNode(n);
+      }
+      copyConnections(model, copy);
+      GModel kept = copy.build();
+      long bytes = usedHeap() - before;
+      int edges = kept.getConnections().size();
+      System.out.printf("%-24s %-12s %10d edges %14.1f B/edge retained%n", input, "retained", edges, //
+            edges == 0 ? 0.0 : (double) bytes / edges);
+   }
+
+   private static void copyConnections(GModel model, GModelBuilder copy) {
+      for (GNode n : model.getNodes()) {
+         for (int i = 0, degree = model.getOutDegree(n); i < degree; i++) {
+            copy.addConnection(n, model.getConnectedTo(n, i), model.getConnectionOffset(n, i));
+         }
+      }
+   }
+
+   private static long usedHeap() {
+      Runtime rt = Runtime.getRuntime();
+      for (int i = 0; i < 3; i++) {
+         System.gc();
+      }
+      return rt.totalMemory() - rt.freeMemory();
+   }
+
+   /**
+    * Parses the files, with bindings unless only the structure is wanted; visits each unit
+    * into the builder if one is given.
+    *
+    * @return the number of parsed units.
+    */
+   private static int parse(String[] sourceRoots, String[] files, GModelBuilder builder, boolean structureOnly) {
+      Map<String, String> options = new HashMap<String, String>();
+      JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+      ASTParser parser = ASTParser.newParser(AST.JLS10);
+      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+      parser.setCompilerOptions(options);
+      parser.setEnvironment(new String[0], sourceRoots, null, true);
+      parser.setResolveBindings(!structureOnly);
+      parser.setIgnoreMethodBodies(structureOnly);
+      int[] units = { 0 };
+      parser.createASTs(files, null, new String[0], new FileASTRequestor() {
+         @Override
+         public void acceptAST(String sourceFilePath, CompilationUnit compilationUnit) {
+            if (builder != null) {
+               compilationUnit.accept(new DeclarationVisitor(builder, PROJECT_NAME));
+            }
+            units[0]++;
+         }
+      }, null);
+      return units[0];
+   }
+
+   private static List<CloneFingerprintVisitor.Fingerprint> fingerprint(String[] sourceRoots, String[] files, int minSize) {
+      Map<String, String> options = new HashMap<String, String>();
+      JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+      ASTParser parser = ASTParser.newParser(AST.JLS10);
+      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+      parser.setCompilerOptions(options);
+      parser.setEnvironment(new String[0], sourceRoots, null, true);
+      parser.setResolveBindings(true);
+      List<CloneFingerprintVisitor.Fingerprint> fingerprints = new ArrayList<CloneFingerprintVisitor.Fingerprint>();
+      parser.createASTs(files, null, new String[0], new FileASTRequestor() {
+         @Override
+         public void acceptAST(String sourceFilePath, CompilationUnit compilationUnit) {
+            CloneFingerprintVisitor visitor = new CloneFingerprintVisitor(PROJECT_NAME, minSize);
+            compilationUnit.accept(visitor);
+            fingerprints.addAll(visitor.getFingerprints());
+         }
+      }, null);
+      return fingerprints;
+   }
+
+   private static void measure(String input, String name, String unit, Op op) throws Exception {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+         op.run();
+      }
+      long work = 0, nanos = 0, bytes = 0;
+      for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+         long bytesBefore = allocatedBytes();
+         long start = System.nanoTime();
+         work += op.run();
+         nanos += System.nanoTime() - start;
+         bytes += allocatedBytes() - bytesBefore;
+      }
+      double seconds = nanos / 1e9;
+      System.out.printf("%-24s %-12s %10.1f ops/s %14.1f %s/s %12.1f B/%s%n", input, name, //
+            MEASURE_ITERATIONS / seconds, work / seconds, unit, work == 0 ? 0.0 : (double) bytes / work, unit);
+   }
+
+   private static long allocatedBytes() {
+      java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+      if (mx instanceof com.sun.management.ThreadMXBean) {
+         return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return 0;
+   }
+
+   private static String[] javaFiles(File root) throws IOException {
+      List<String> files = new ArrayList<String>();
+      try (Stream<Path> paths = Files.walk(root.toPath())) {
+         paths.filter(p -> p.toString().endsWith(".java")).forEach(p -> files.add(p.toString()));
+      }
+      return files.toArray(new String[files.size()]);
+   }
+}
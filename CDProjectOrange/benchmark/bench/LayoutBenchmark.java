@@ -0,0 +1,85 @@
+/*
+ * @(#) LayoutBenchmark.java
+ *
+ */
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import graph.layout.GForceLayout;
+import graph.layout.GLayoutEngine;
+import graph.layout.GLayoutModel;
+import graph.layout.GTreeLayout;
+
+/**
+ * Benchmarks the layout engines on generated declaration graphs of 1k, 10k and 50k nodes:
+ * the tree layout cold and after a change to one class, and the force-directed layout
+ * cold on one thread and on all cores, and warm after the same change.
+ * <pre>
+ * java -Xmx4g bench.LayoutBenchmark 1000,10000,50000
+ * </pre>
+ */
+public class LayoutBenchmark {
+   private static final int CLASSES_PER_PACKAGE = 20;
+   private static final int METHODS_PER_CLASS   = 10;
+   private static final int FORCE_ITERATIONS    = 50;
+
+   public static void main(String[] args) {
+      String sizes = args.length > 0 ? args[0] : "1000,10000,50000";
+      int cores = Runtime.getRuntime().availableProcessors();
+      for (String size : sizes.split(",")) {
+         int nodes = Integer.parseInt(size.trim());
+         GLayoutModel model = generate(nodes, 0);
+         GLayoutModel changed = generate(nodes, 1);
+
+         GTreeLayout tree = new GTreeLayout();
+         measure(nodes, "tree cold", tree, model);
+         measure(nodes, "tree 1 class changed", tree, changed);
+
+         measure(nodes, "force cold, 1 thread", new GForceLayout().setIterations(FORCE_ITERATIONS).setParallelism(1), model);
+         GForceLayout force = new GForceLayout().setIterations(FORCE_ITERATIONS).setParallelism(cores);
+         measure(nodes, "force cold, " + cores + " threads", force, model);
+         measure(nodes, "force 1 class changed", force, changed);
+      }
+   }
+
+   private static void measure(int nodes, String name, GLayoutEngine engine, GLayoutModel model) {
+      long start = System.nanoTime();
+      Map<String, double[]> positions = engine.layout(model, false);
+      long millis = (System.nanoTime() - start) / 1000000;
+      System.out.printf("%-8d %-26s %8d ms %8d recomputed %8d placed%n", nodes, name, millis, engine.getRecomputed(), positions.size());
+   }
+
+   /**
+    * Generates packages of classes of methods with about the given number of nodes.
+    *
+    * @param extraMethods methods added to the first class, to model an edit.
+    */
+   private static GLayoutModel generate(int nodes, int extraMethods) {
+      List<String> ids = new ArrayList<String>(), parents = new ArrayList<String>();
+      int perPackage = 1 + CLASSES_PER_PACKAGE * (1 + METHODS_PER_CLASS);
+      int packages = Math.max(1, nodes / perPackage);
+      for (int p = 0; p < packages; p++) {
+         String pkg = "bench.p" + p;
+         ids.add(pkg);
+         parents.add("bench");
+         for (int c = 0; c < CLASSES_PER_PACKAGE; c++) {
+            String cls = pkg + ".C" + c;
+            ids.add(cls);
+            parents.add(pkg);
+            int methods = METHODS_PER_CLASS + (p == 0 && c == 0 ? extraMethods : 0);
+            for (int m = 0; m < methods; m++) {
+               ids.add(cls + ".m" + m);
+               parents.add(cls);
+            }
+         }
+      }
+      double[] widths = new double[ids.size()], heights = new double[ids.size()];
+      Arrays.fill(widths, 60);
+      Arrays.fill(heights, 20);
+      return new GLayoutModel(ids, parents, widths, heights);
+   }
+}
@@ -0,0 +1,137 @@
+/*
+ * @(#) RefreshSoak.java
+ *
+ */
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+
+import graph.model.GCallBuffer;
+import graph.model.GModel;
+import graph.model.GModelBuilder;
+import graph.model.GSymbolTable;
+import graph.provider.GModelProvider;
+import visitor.CallGraphVisitor;
+import visitor.DeclarationVisitor;
+
+/**
+ * Soak test for the model lifecycle: runs hundreds of refresh cycles and checks that the
+ * heap retained after a full GC stays flat. Each cycle rebuilds the symbol table, parses
+ * the sources, publishes a new model through GModelProvider as a Refresh does, and then publishes a model derived
+ * from it, as a move, clone or incremental update does. The retained heap is sampled
+ * after a warm-up; the run fails with exit code 1 if the last sample exceeds the first by
+ * more than the tolerance.
+ * <pre>
+ * java -Xmx1g bench.RefreshSoak [cycles] [source dirs...]
+ * </pre>
+ * Without source directories, a generated tree of 100 classes is used.
+ */
+public class RefreshSoak {
+   private static final String PROJECT_NAME    = "soak";
+   private static final int    WARMUP_CYCLES   = 20;
+   private static final int    SAMPLE_INTERVAL = 50;
+   // Retained heap may grow by 10% plus 2 MB of noise before the run fails.
+   private static final double TOLERANCE_RATIO = 1.10;
+   private static final long   TOLERANCE_BYTES = 2L << 20;
+
+   public static void main(String[] args) throws Exception {
+      int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+      List<String> roots = new ArrayList<String>();
+      for (int i = 1; i < args.length; i++) {
+         roots.add(new File(args[i]).getAbsolutePath());
+      }
+      if (roots.isEmpty()) {
+         File root = Files.createTempDirectory("cdpo-soak-").toFile();
+         SyntheticSources.generate(root, 100);
+         roots.add(root.getAbsolutePath());
+      }
+      String[] sourceRoots = roots.toArray(new String[roots.size()]);
+      String[] files = javaFiles(sourceRoots);
+
+      long baseline = 0, last = 0;
+      for (int cycle = 1; cycle <= cycles; cycle++) {
+         refresh(sourceRoots, files);
+         if (cycle == WARMUP_CYCLES) {
+            baseline = usedHeap();
+            System.out.printf("cycle %5d  retained %8.1f MB  (baseline)%n", cycle, baseline / 1048576.0);
+         } else if (cycle > WARMUP_CYCLES && (cycle % SAMPLE_INTERVAL == 0 || cycle == cycles)) {
+            last = usedHeap();
+            System.out.printf("cycle %5d  retained %8.1f MB  %+8.1f MB%n", cycle, last / 1048576.0, //
+                  (last - baseline) / 1048576.0);
+         }
+      }
+      if (cycles <= WARMUP_CYCLES) {
+         System.out.println("Too few cycles to sample after the warm-up of " + WARMUP_CYCLES);
+         System.exit(2);
+      }
+      GModel model = GModelProvider.instance().getModel();
+      System.out.printf("%d cycles, %d nodes and %d connections per model%n", cycles, model.getNodes().size(), //
+            model.getConnections().size());
+      if (last > baseline * TOLERANCE_RATIO + TOLERANCE_BYTES) {
+         System.out.printf("FAILED: retained heap grew from %.1f MB to %.1f MB%n", baseline / 1048576.0, last / 1048576.0);
+         System.exit(1);
+      }
+      System.out.println("OK: retained heap stayed flat");
+   }
+
+   private static void refresh(String[] sourceRoots, String[] files) {
+      Map<String, String> options = new HashMap<String, String>();
+      JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+      ASTParser parser = ASTParser.newParser(AST.JLS10);
+      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+      parser.setCompilerOptions(options);
+      parser.setEnvironment(new String[0], sourceRoots, null, true);
+      parser.setResolveBindings(true);
+      // As a full analysis does, so the ids of the replaced model go with its symbol table.
+      GSymbolTable.rebuild();
+      GModelProvider provider = GModelProvider.instance();
+      GModelBuilder builder = provider.newBuilder();
+      GCallBuffer calls = new GCallBuffer();
+      parser.createASTs(files, null, new String[0], new FileASTRequestor() {
+         @Override
+         public void acceptAST(String sourceFilePath, CompilationUnit compilationUnit) {
+            compilationUnit.accept(new DeclarationVisitor(builder, PROJECT_NAME));
+            compilationUnit.accept(new CallGraphVisitor(calls, PROJECT_NAME));
+         }
+      }, null);
+      builder.addCalls(calls);
+      provider.publish(builder.build());
+
+      GModel base = provider.getModel();
+      if (!provider.publish(base, provider.newBuilder(base).build())) {
+         throw new IllegalStateException("The derived model was not published");
+      }
+   }
+
+   private static long usedHeap() {
+      Runtime rt = Runtime.getRuntime();
+      for (int i = 0; i < 3; i++) {
+         System.gc();
+      }
+      return rt.totalMemory() - rt.freeMemory();
+   }
+
+   private static String[] javaFiles(String[] roots) throws IOException {
+      List<String> files = new ArrayList<String>();
+      for (String root : roots) {
+         try (Stream<Path> paths = Files.walk(new File(root).toPath())) {
+            paths.filter(p -> p.toString().endsWith(".java")).forEach(p -> files.add(p.toString()));
+         }
+      }
+      return files.toArray(new String[files.size()]);
+   }
+}
@@ -0,0 +1,49 @@
+/*
+ * @(#) SyntheticSources.java
+ *
+ */
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes a synthetic source tree of a given number of classes, 50 classes per package
+ * and 10 methods per class. Each method calls into the previous class so that binding
+ * resolution has cross-unit work to do.
+ */
+public class SyntheticSources {
+   static final int CLASSES_PER_PACKAGE = 50;
+   static final int METHODS_PER_CLASS   = 10;
+
+   public static File generate(File root, int classes) throws IOException {
+      for (int c = 0; c < classes; c++) {
+         String pkgName = "gen.p" + (c / CLASSES_PER_PACKAGE);
+         File pkgDir = new File(root, pkgName.replace('.', File.separatorChar));
+         pkgDir.mkdirs();
+         Files.write(new File(pkgDir, "C" + c + ".java").toPath(), //
+               source(pkgName, c).getBytes(StandardCharsets.UTF_8));
+      }
+      return root;
+   }
+
+   private static String source(String pkgName, int c) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("package ").append(pkgName).append(";\n\n");
+      sb.append("public class C").append(c).append(" {\n");
+      sb.append("   private int state;\n\n");
+      for (int m = 0; m < METHODS_PER_CLASS; m++) {
+         sb.append("   public int m").append(m).append("(int x) {\n");
+         if (c > 0) {
+            String prev = "gen.p" + ((c - 1) / CLASSES_PER_PACKAGE) + ".C" + (c - 1);
+            sb.append("      state += new ").append(prev).append("().m").append(m).append("(x);\n");
+         }
+         sb.append("      return state + x * ").append(m).append(";\n");
+         sb.append("   }\n\n");
+      }
+      sb.append("}\n");
+      return sb.toString();
+   }
+}
@@ -0,0 +1,66 @@
+/*
+ * @(#) AnalysisJob.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Runs a ProjectAnalyzer off the UI thread. Analysis jobs share a scheduling rule,
+ * so a new job waits until a canceled one has stopped touching the model.
+ */
+public class AnalysisJob extends Job {
+   // Shared with the incremental updates, which also replace the published model, and with
+   // the feature envy and clone jobs, whose results are keyed in the current symbol table.
+   static final ISchedulingRule MODEL_RULE = new ISchedulingRule() {
+      @Override
+      public boolean contains(ISchedulingRule rule) {
+         return rule == this;
+      }
+
+      @Override
+      public boolean isConflicting(ISchedulingRule rule) {
+         return rule == this;
+      }
+   };
+
+   private final ProjectAnalyzer analyzer;
+   private final Runnable        onDone;
+
+   /**
+    * @param onDone called on the job thread once the analysis has completed without cancellation.
+    */
+   public AnalysisJob(ProjectAnalyzer analyzer, Runnable onDone) {
+      super("Analyzing Java projects");
+      this.analyzer = analyzer;
+      this.onDone = onDone;
+      setRule(MODEL_RULE);
+   }
+
+   @Override
+   protected IStatus run(IProgressMonitor monitor) {
+      try {
+         analyzer.analyze(monitor);
+      } catch (OperationCanceledException e) {
+         return Status.CANCEL_STATUS;
+      } catch (CoreException e) {
+         // The published model is left as it was; the Jobs framework shows the failure.
+         return e.getStatus();
+      }
+      if (monitor.isCanceled()) {
+         return Status.CANCEL_STATUS;
+      }
+      onDone.run();
+      return Status.OK_STATUS;
+   }
+}
@@ -0,0 +1,318 @@
+/*
+ * @(#) AnalysisScope.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Restricts the analysis to some projects, source folders and packages, and to the
+ * units whose workspace path matches the include globs and none of the exclude globs.
+ * An empty list does not restrict anything. Source folders and globs are matched
+ * against workspace-relative paths such as "MyProject/src" and
+ * "MyProject/src/a/b/Foo.java"; in globs, * matches within a folder and ** across folders.
+ * <p>
+ * The scope of the view is kept in the plug-in state location, which belongs to the
+ * workspace, so each workspace remembers its own scope.
+ */
+public class AnalysisScope {
+   private static final String SCOPE_FILE = "scope.properties";
+   private static final String JAVANATURE = "org.eclipse.jdt.core.javanature";
+
+   private static AnalysisScope singleton = null;
+
+   private final File             file;
+   // Each list is replaced as a whole, so an analysis can read it while the scope is edited.
+   private volatile List<String>  projects        = Collections.emptyList();
+   private volatile List<String>  sourceRoots     = Collections.emptyList();
+   private volatile List<String>  packagePrefixes = Collections.emptyList();
+   private volatile List<String>  includes        = Collections.emptyList();
+   private volatile List<String>  excludes        = Collections.emptyList();
+   private volatile List<Pattern> includePatterns = Collections.emptyList();
+   private volatile List<Pattern> excludePatterns = Collections.emptyList();
+
+   /**
+    * @param file where load() and save() keep the scope, or null for a scope that is not saved.
+    */
+   public AnalysisScope(File file) {
+      this.file = file;
+   }
+
+   public static synchronized AnalysisScope instance() {
+      if (singleton == null) {
+         File stateDir = Platform.getStateLocation(FrameworkUtil.getBundle(AnalysisScope.class)).toFile();
+         singleton = new AnalysisScope(new File(stateDir, SCOPE_FILE));
+         singleton.load();
+      }
+      return singleton;
+   }
+
+   /**
+    * @return the names of the open Java projects in the workspace, which a scope can select.
+    */
+   public static List<String> javaProjectNames() {
+      List<String> names = new ArrayList<String>();
+      for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+         try {
+            if (project.isOpen() && project.isNatureEnabled(JAVANATURE)) {
+               names.add(project.getName());
+            }
+         } catch (CoreException e) {
+            e.printStackTrace();
+         }
+      }
+      return names;
+   }
+
+   public List<String> getProjects() {
+      return projects;
+   }
+
+   public synchronized AnalysisScope setProjects(Collection<String> projects) {
+      this.projects = copyOf(projects);
+      return this;
+   }
+
+   public List<String> getSourceRoots() {
+      return sourceRoots;
+   }
+
+   public synchronized AnalysisScope setSourceRoots(Collection<String> sourceRoots) {
+      List<String> roots = new ArrayList<String>();
+      for (String root : sourceRoots) {
+         roots.add(trimSlashes(root));
+      }
+      this.sourceRoots = copyOf(roots);
+      return this;
+   }
+
+   public List<String> getPackagePrefixes() {
+      return packagePrefixes;
+   }
+
+   public synchronized AnalysisScope setPackagePrefixes(Collection<String> packagePrefixes) {
+      this.packagePrefixes = copyOf(packagePrefixes);
+      return this;
+   }
+
+   public List<String> getIncludes() {
+      return includes;
+   }
+
+   public synchronized AnalysisScope setIncludes(Collection<String> includes) {
+      this.includes = copyOf(includes);
+      this.includePatterns = compile(this.includes);
+      return this;
+   }
+
+   public List<String> getExcludes() {
+      return excludes;
+   }
+
+   public synchronized AnalysisScope setExcludes(Collection<String> excludes) {
+      this.excludes = copyOf(excludes);
+      this.excludePatterns = compile(this.excludes);
+      return this;
+   }
+
+   /**
+    * @return true if every unit of every project is in scope.
+    */
+   public boolean isUnrestricted() {
+      return projects.isEmpty() && sourceRoots.isEmpty() && packagePrefixes.isEmpty() && includes.isEmpty() && excludes.isEmpty();
+   }
+
+   public boolean includesProject(String prjName) {
+      return projects.isEmpty() || projects.contains(prjName);
+   }
+
+   /**
+    * @return true if the package is in a source folder and under a package prefix in scope.
+    */
+   public boolean includesPackage(IPackageFragment iPackage) {
+      if (!sourceRoots.isEmpty()) {
+         IPackageFragmentRoot root = (IPackageFragmentRoot) iPackage.getParent();
+         if (!sourceRoots.contains(trimSlashes(root.getPath().toString()))) {
+            return false;
+         }
+      }
+      return includesPackage(iPackage.getElementName());
+   }
+
+   public boolean includesPackage(String pkgName) {
+      if (packagePrefixes.isEmpty()) {
+         return true;
+      }
+      for (String prefix : packagePrefixes) {
+         if (pkgName.equals(prefix) || pkgName.startsWith(prefix + ".")) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   public boolean includesUnit(ICompilationUnit iUnit) {
+      return includesPath(trimSlashes(iUnit.getPath().toString()));
+   }
+
+   /**
+    * @param path a workspace-relative path such as "MyProject/src/a/b/Foo.java".
+    */
+   public boolean includesPath(String path) {
+      List<Pattern> included = includePatterns, excluded = excludePatterns;
+      if (!included.isEmpty() && !matchesAny(included, path)) {
+         return false;
+      }
+      return !matchesAny(excluded, path);
+   }
+
+   private static boolean matchesAny(List<Pattern> patterns, String path) {
+      for (Pattern p : patterns) {
+         if (p.matcher(path).matches()) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Translates a glob to a regular expression: ** matches across folders, * and ? within one.
+    */
+   static Pattern globToPattern(String glob) {
+      StringBuilder regex = new StringBuilder();
+      String g = trimSlashes(glob);
+      for (int i = 0; i < g.length(); i++) {
+         char c = g.charAt(i);
+         if (c == '*' && i + 1 < g.length() && g.charAt(i + 1) == '*') {
+            i++;
+            if (i + 1 < g.length() && g.charAt(i + 1) == '/') {
+               i++;
+               regex.append("(?:.*/)?"); // "**/" also matches no folder at all
+            } else {
+               regex.append(".*");
+            }
+         } else if (c == '*') {
+            regex.append("[^/]*");
+         } else if (c == '?') {
+            regex.append("[^/]");
+         } else {
+            regex.append(Pattern.quote(String.valueOf(c)));
+         }
+      }
+      return Pattern.compile(regex.toString());
+   }
+
+   private static List<Pattern> compile(List<String> globs) {
+      List<Pattern> patterns = new ArrayList<Pattern>();
+      for (String glob : globs) {
+         patterns.add(globToPattern(glob));
+      }
+      return Collections.unmodifiableList(patterns);
+   }
+
+   private static String trimSlashes(String path) {
+      String p = path.trim().replace('\\', '/');
+      while (p.startsWith("/")) {
+         p = p.substring(1);
+      }
+      while (p.endsWith("/")) {
+         p = p.substring(0, p.length() - 1);
+      }
+      return p;
+   }
+
+   private static List<String> copyOf(Collection<String> values) {
+      List<String> result = new ArrayList<String>();
+      for (String v : values) {
+         if (!v.trim().isEmpty() && !result.contains(v.trim())) {
+            result.add(v.trim());
+         }
+      }
+      return Collections.unmodifiableList(result);
+   }
+
+   /**
+    * Splits a comma-separated list, as entered in the scope dialog and kept in the file.
+    */
+   public static List<String> split(String list) {
+      List<String> values = new ArrayList<String>();
+      for (String v : list.split(",")) {
+         if (!v.trim().isEmpty()) {
+            values.add(v.trim());
+         }
+      }
+      return values;
+   }
+
+   public static String join(List<String> values) {
+      return String.join(", ", values);
+   }
+
+   public synchronized void load() {
+      if (file == null || !file.isFile()) {
+         return;
+      }
+      Properties props = new Properties();
+      try (InputStream in = new FileInputStream(file)) {
+         props.load(in);
+      } catch (IOException e) {
+         e.printStackTrace();
+         return;
+      }
+      setProjects(split(props.getProperty("projects", "")));
+      setSourceRoots(split(props.getProperty("sourceRoots", "")));
+      setPackagePrefixes(split(props.getProperty("packagePrefixes", "")));
+      setIncludes(split(props.getProperty("includes", "")));
+      setExcludes(split(props.getProperty("excludes", "")));
+   }
+
+   public synchronized void save() {
+      if (file == null) {
+         return;
+      }
+      Properties props = new Properties();
+      props.setProperty("projects", join(projects));
+      props.setProperty("sourceRoots", join(sourceRoots));
+      props.setProperty("packagePrefixes", join(packagePrefixes));
+      props.setProperty("includes", join(includes));
+      props.setProperty("excludes", join(excludes));
+      try (OutputStream out = new FileOutputStream(file)) {
+         props.store(out, "CDProjectOrange analysis scope");
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * One line per restriction, also used to tell snapshots of different scopes apart.
+    */
+   @Override
+   public synchronized String toString() {
+      return "projects=" + join(projects) + "\nsourceRoots=" + join(sourceRoots) + "\npackagePrefixes=" + join(packagePrefixes) //
+            + "\nincludes=" + join(includes) + "\nexcludes=" + join(excludes);
+   }
+}
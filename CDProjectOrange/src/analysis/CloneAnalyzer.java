@@ -7,162 +7,146 @@
  */
 package analysis;
 
-import org.eclipse.core.resources.IProject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.IPackageFragment;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.ASTParser;
-import org.eclipse.jdt.core.dom.ASTVisitor;
-import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.core.dom.ITypeBinding;
-import org.eclipse.jdt.core.dom.MethodDeclaration;
-import org.eclipse.jdt.core.dom.TypeDeclaration;
 
 import graph.model.GClassNode;
 import graph.model.GMethodNode;
 import graph.model.GNodeType;
 import util.UtilPlatform;
-import visitor.DeclarationVisitor;
 import util.UtilMsg;
 
 public class CloneAnalyzer {
-   private static final String JAVANATURE = "org.eclipse.jdt.core.javanature";
-   protected String prjName, pkgName;
-
    private GMethodNode methodToBeCloned;
    private GClassNode classMoveDestination;
-   private IMethod methodElemToBeMoved;
-   private IType typeMoveDest;
-   private ICompilationUnit iCUnitToBeMovedMethod;
 
    public CloneAnalyzer() {
    }
 
-   public void analyze() {
-      // =============================================================
-      // 1st step: Project
-      // =============================================================
-      try {
-         IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
-         for (IProject project : projects) {
-            if (!project.isOpen() || !project.isNatureEnabled(JAVANATURE)) { // Check if we have a Java project.
-               continue;
-            }
-            prjName = project.getName();
-            analyzePackages(JavaCore.create(project).getPackageFragments());
+   public void setMethodToBeCloned(GMethodNode mNode) {
+      this.methodToBeCloned = mNode;
+   }
+
+   public void setClassCloneDestination(GClassNode cNode) {
+      this.classMoveDestination = cNode;
+   }
+
+   /**
+    * Clones the selected method into its own class. The method is resolved through the
+    * Java model, without parsing the workspace.
+    */
+   public void cloneMethod() {
+      if (this.methodToBeCloned.getNodeType().equals(GNodeType.UserSelection)) {
+         IMethod method = JavaElementLookup.findMethod(methodToBeCloned);
+         if (method == null) {
+            UtilMsg.openWarning("Cannot find " + methodToBeCloned.getClassName() + "." + methodToBeCloned.getName() + " in the workspace.");
+            return;
          }
-      } catch (JavaModelException e) {
-         e.printStackTrace();
-      } catch (CoreException e) {
-         e.printStackTrace();
+         copy(Collections.singletonList(method), Collections.singletonList(method.getDeclaringType()));
+      } else {
+         UtilMsg.openWarning("Please select a method node to clone.");
       }
    }
 
-   protected void analyzePackages(IPackageFragment[] packages) throws CoreException, JavaModelException {
-      // =============================================================
-      // 2nd step: Packages
-      // =============================================================
-      for (IPackageFragment iPackage : packages) {
-         if (iPackage.getKind() == IPackageFragmentRoot.K_SOURCE) {
-            if (iPackage.getCompilationUnits().length < 1) {
-               continue;
-            }
-            pkgName = iPackage.getElementName();
-            analyzeCompilationUnit(iPackage.getCompilationUnits());
+   /**
+    * Clones every method into its own class in one Java model operation, without parsing.
+    * Methods that cannot be found in the workspace are skipped.
+    *
+    * @return the names of the clones, or an empty list if the copy failed.
+    */
+   public List<String> cloneMethods(List<GMethodNode> mNodes) {
+      List<IMethod> methods = new ArrayList<IMethod>();
+      List<IType> types = new ArrayList<IType>();
+      List<String> unresolved = new ArrayList<String>();
+      for (GMethodNode mNode : mNodes) {
+         IMethod method = JavaElementLookup.findMethod(mNode);
+         if (method == null) {
+            unresolved.add(mNode.getClassName() + "." + mNode.getName());
+            continue;
          }
+         methods.add(method);
+         types.add(method.getDeclaringType());
       }
+      if (!unresolved.isEmpty()) {
+         UtilMsg.openWarning("Cannot find " + String.join(", ", unresolved) + " in the workspace.");
+      }
+      return copy(methods, types);
    }
 
-   private void analyzeCompilationUnit(ICompilationUnit[] iCompilationUnits) throws JavaModelException {
-      // =============================================================
-      // 3rd step: ICompilationUnits
-      // =============================================================
-      for (ICompilationUnit iCUnit : iCompilationUnits) {
-         CompilationUnit compUnit = parse(iCUnit);
-
-         // TODO: Term Project
-         
-         ASTVisitor visitor = new ASTVisitor() {
-            public boolean visit(TypeDeclaration typeDecl) {
-            	if(methodToBeCloned.getClassName().equals(typeDecl.resolveBinding().getName())){
-                	System.out.println(methodToBeCloned.getPkgName());
-                	typeMoveDest = (IType) typeDecl.resolveBinding().getJavaElement();
-
-            	}
-               return true;
-            }
-
-            private boolean checkDst(TypeDeclaration typeDecl) {
-               String classSrc = methodToBeCloned.getPkgName() + "." + methodToBeCloned.getClassName();
-               String classDst = classMoveDestination.getPkgName() + "." + classMoveDestination.getName();
-               String classCur = typeDecl.resolveBinding().getPackage().getName() + "." + typeDecl.getName().getFullyQualifiedName();
-               return classCur.equals(classSrc) == false && classCur.equals(classDst);
-            }
-
-            public boolean visit(MethodDeclaration methodDecl) {
-               if (eqSrc(methodDecl)) {
-            	   methodElemToBeMoved = (IMethod) methodDecl.resolveBinding().getJavaElement();
-                  iCUnitToBeMovedMethod = iCUnit;
-               }
-               return true;
-            }
-
-            private boolean eqSrc(MethodDeclaration methodDecl) {
-               ITypeBinding curClass = methodDecl.resolveBinding().getDeclaringClass();
-               String cur = curClass.getPackage().getName() + "." + curClass.getName() + "." + methodDecl.getName();
-               String src = methodToBeCloned.getPkgName() + "." + methodToBeCloned.getClassName() + "." + methodToBeCloned.getName();
-               return cur.equals(src);
+   /**
+    * Copies methods.get(i) into types.get(i) under the first name that no member of the type has.
+    */
+   private List<String> copy(List<IMethod> methods, List<IType> types) {
+      if (methods.isEmpty()) {
+         return Collections.emptyList();
+      }
+      Map<IType, NameAllocator> allocators = new HashMap<IType, NameAllocator>();
+      List<String> names = new ArrayList<String>();
+      Set<ICompilationUnit> touchedUnits = new LinkedHashSet<ICompilationUnit>();
+      try {
+         for (int i = 0; i < methods.size(); i++) {
+            NameAllocator allocator = allocators.get(types.get(i));
+            if (allocator == null) {
+               allocator = new NameAllocator(types.get(i));
+               allocators.put(types.get(i), allocator);
             }
-         };
-         compUnit.accept(visitor);
+            names.add(allocator.allocate(methods.get(i).getElementName()));
+            touchedUnits.add(types.get(i).getCompilationUnit());
+         }
+         //See https://help.eclipse.org/oxygen/index.jsp?topic=%2Forg.eclipse.jdt.doc.isv%2Freference%2Fapi%2Forg%2Feclipse%2Fjdt%2Fcore%2FIJavaModel.html
+         JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).copy( //
+               methods.toArray(new IJavaElement[methods.size()]), //
+               types.toArray(new IJavaElement[types.size()]), //
+               null, names.toArray(new String[names.size()]), false, null);
+      } catch (JavaModelException e) {
+         e.printStackTrace();
+         UtilMsg.openWarning("Failed to clone " + methods.size() + " method(s): " + e.getMessage());
+         return Collections.emptyList();
       }
+      UtilPlatform.indentAndSave(touchedUnits);
+      return names;
    }
 
-   private static CompilationUnit parse(ICompilationUnit unit) {
-      ASTParser parser = ASTParser.newParser(AST.JLS10);
-      parser.setKind(ASTParser.K_COMPILATION_UNIT);
-      parser.setSource(unit);
-      parser.setResolveBindings(true);
-      return (CompilationUnit) parser.createAST(null); // parse
-   }
-
-   public void setMethodToBeCloned(GMethodNode mNode) {
-      this.methodToBeCloned = mNode;
-   }
-
-   public void setClassCloneDestination(GClassNode cNode) {
-      this.classMoveDestination = cNode;
-   }
+   /**
+    * Picks clone names that do not clash with the members of a type. The members are read
+    * once; each name is then taken from the next unused numeric suffix of its base name.
+    */
+   private static class NameAllocator {
+      private final Set<String>          taken      = new HashSet<String>();
+      private final Map<String, Integer> nextSuffix = new HashMap<String, Integer>();
+
+      NameAllocator(IType type) throws JavaModelException {
+         for (IMethod method : type.getMethods()) {
+            taken.add(method.getElementName());
+         }
+         for (IField field : type.getFields()) {
+            taken.add(field.getElementName());
+         }
+      }
 
-   public void cloneMethod() {
-	   
-      if (this.methodToBeCloned.getNodeType().equals(GNodeType.UserSelection)) {
-         System.out.println("-> " + this.methodElemToBeMoved.getPath() + "." + this.methodElemToBeMoved.getElementName());
-         System.out.println("-> " + this.typeMoveDest.getFullyQualifiedName());
-    	 String cloneName = this.methodElemToBeMoved.getElementName();
-    	 int num = 1;
-    	 boolean done = false;
-    	 while(!done) {
-    		 try {
-    			 //See https://help.eclipse.org/oxygen/index.jsp?topic=%2Forg.eclipse.jdt.doc.isv%2Freference%2Fapi%2Forg%2Feclipse%2Fjdt%2Fcore%2FIMethod.html
-    			 methodElemToBeMoved.copy(typeMoveDest, null, cloneName + num, false, null);
-            
-    			 UtilPlatform.indentAndSave(iCUnitToBeMovedMethod);
-    			 done = true;
-    		 } catch (JavaModelException e) {
-    			 num++;
-    		 }
-    	 }
-      } else {
-         System.out.println("[DBG] Please select class and method nodes to clone.");
+      String allocate(String base) {
+         int num = nextSuffix.getOrDefault(base, 1);
+         while (taken.contains(base + num)) {
+            num++;
+         }
+         nextSuffix.put(base, num + 1);
+         taken.add(base + num);
+         return base + num;
       }
    }
-}
\ No newline at end of file
+}
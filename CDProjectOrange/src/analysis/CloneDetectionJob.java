@@ -0,0 +1,60 @@
+/*
+ * @(#) CloneDetectionJob.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Detects clones in the workspace off the UI thread.
+ */
+public class CloneDetectionJob extends Job {
+   private final CloneDetector                   detector;
+   private final Consumer<CloneDetectionJob>     onDone;
+   private volatile List<CloneDetector.CloneGroup> groups = Collections.emptyList();
+
+   /**
+    * @param onDone called on the job thread with this job once the groups are available from getGroups().
+    */
+   public CloneDetectionJob(CloneDetector detector, Consumer<CloneDetectionJob> onDone) {
+      super("Detecting clones");
+      this.detector = detector;
+      this.onDone = onDone;
+      // The groups are kept by key, which must come from the table of the model they are shown on.
+      setRule(AnalysisJob.MODEL_RULE);
+   }
+
+   public List<CloneDetector.CloneGroup> getGroups() {
+      return groups;
+   }
+
+   @Override
+   protected IStatus run(IProgressMonitor monitor) {
+      try {
+         groups = detector.analyze(monitor);
+      } catch (OperationCanceledException e) {
+         return Status.CANCEL_STATUS;
+      } catch (CoreException e) {
+         // Shown by the Jobs framework; onDone is not called, so the previous groups stay on screen.
+         return e.getStatus();
+      }
+      if (monitor.isCanceled()) {
+         return Status.CANCEL_STATUS;
+      }
+      onDone.accept(this);
+      return Status.OK_STATUS;
+   }
+}
@@ -0,0 +1,307 @@
+/*
+ * @(#) CloneDetector.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import util.UtilPlatform;
+import visitor.CloneFingerprintVisitor;
+import visitor.CloneFingerprintVisitor.Fingerprint;
+
+/**
+ * Finds groups of cloned methods in the workspace without comparing all pairs:
+ * <ul>
+ * <li>Type-1 (identical bodies) and Type-2 (bodies that differ in names, literals and
+ * types) clones share a hash bucket of the exact or normalized fingerprint.
+ * <li>Type-3 (near-miss) candidates share a locality-sensitive hash bucket of their MinHash
+ * signatures, and are confirmed when the signatures estimate a Jaccard similarity of at
+ * least the configured threshold.
+ * </ul>
+ * A group is a connected set of clone pairs and has the weakest type among them.
+ * Units are fingerprinted in parallel batches, one parser per batch.
+ */
+public class CloneDetector {
+   public static final int     TYPE_1             = 1;
+   public static final int     TYPE_2             = 2;
+   public static final int     TYPE_3             = 3;
+
+   private static final String JAVANATURE         = "org.eclipse.jdt.core.javanature";
+   private static final int    BATCHES_PER_THREAD = 4;
+   private static final int    BANDS              = 8;
+   private static final int    ROWS               = CloneFingerprintVisitor.MIN_HASH_SIZE / BANDS;
+   // Bounds the comparisons per method in a crowded band bucket.
+   private static final int    MAX_BUCKET_PROBES  = 32;
+
+   private int    parallelism = Runtime.getRuntime().availableProcessors();
+   private int    minSize     = 30;
+   private double similarity  = 0.7;
+
+   /**
+    * Methods that are clones of each other, with the weakest clone type among them.
+    */
+   public static class CloneGroup {
+      public final int   type;
+      public final int[] methodKeys;
+
+      CloneGroup(int type, int[] methodKeys) {
+         this.type = type;
+         this.methodKeys = methodKeys;
+      }
+   }
+
+   public CloneDetector setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+      return this;
+   }
+
+   /**
+    * Method bodies with fewer AST nodes are not considered.
+    */
+   public CloneDetector setMinSize(int minSize) {
+      this.minSize = minSize;
+      return this;
+   }
+
+   /**
+    * The estimated Jaccard similarity of normalized token 4-grams above which two methods are Type-3 clones.
+    */
+   public CloneDetector setSimilarity(double similarity) {
+      this.similarity = similarity;
+      return this;
+   }
+
+   public int getMinSize() {
+      return minSize;
+   }
+
+   /**
+    * Fingerprints every source unit of the open Java projects and groups the clones.
+    *
+    * @throws OperationCanceledException if the monitor is canceled.
+    * @throws CoreException if the units cannot be listed or a batch fails; no groups are reported then.
+    */
+   public List<CloneGroup> analyze(IProgressMonitor monitor) throws CoreException {
+      List<List<ICompilationUnit>> batches = new ArrayList<List<ICompilationUnit>>();
+      List<IJavaProject> batchProjects = new ArrayList<IJavaProject>();
+      for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+         if (!project.isOpen() || !project.isNatureEnabled(JAVANATURE)) {
+            continue;
+         }
+         IJavaProject javaProject = JavaCore.create(project);
+         List<ICompilationUnit> units = new ArrayList<ICompilationUnit>();
+         for (IPackageFragment iPackage : javaProject.getPackageFragments()) {
+            if (iPackage.getKind() == IPackageFragmentRoot.K_SOURCE) {
+               Collections.addAll(units, iPackage.getCompilationUnits());
+            }
+         }
+         // Several batches per thread keep the threads busy when some units are much larger than others.
+         int batchCount = Math.min(units.size(), parallelism * BATCHES_PER_THREAD);
+         for (int i = 0; i < batchCount; i++) {
+            batches.add(new ArrayList<ICompilationUnit>());
+            batchProjects.add(javaProject);
+         }
+         for (int i = 0; i < units.size(); i++) {
+            batches.get(batches.size() - batchCount + i % batchCount).add(units.get(i));
+         }
+      }
+
+      SubMonitor progress = SubMonitor.convert(monitor, "Detecting clones", batches.size() + 1);
+      IProgressMonitor cancelOnly = new NullProgressMonitor() {
+         @Override
+         public boolean isCanceled() {
+            return progress.isCanceled();
+         }
+      };
+      List<Fingerprint> fingerprints = new ArrayList<Fingerprint>();
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         List<ForkJoinTask<List<Fingerprint>>> tasks = new ArrayList<ForkJoinTask<List<Fingerprint>>>();
+         for (int i = 0; i < batches.size(); i++) {
+            IJavaProject javaProject = batchProjects.get(i);
+            List<ICompilationUnit> batch = batches.get(i);
+            tasks.add(pool.submit(() -> fingerprint(javaProject, batch, cancelOnly)));
+         }
+         // Each batch fills its own list; they are merged here once it is done.
+         for (ForkJoinTask<List<Fingerprint>> task : tasks) {
+            fingerprints.addAll(task.get());
+            progress.split(1);
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new OperationCanceledException();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof OperationCanceledException) {
+            throw (OperationCanceledException) e.getCause();
+         }
+         // Grouping the batches that did finish would report an incomplete set as if it were all.
+         throw new CoreException(UtilPlatform.errorStatus("Clone detection failed", e.getCause()));
+      } finally {
+         pool.shutdownNow();
+         try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      progress.split(1).subTask("Grouping " + fingerprints.size() + " methods");
+      return detect(fingerprints);
+   }
+
+   private List<Fingerprint> fingerprint(IJavaProject javaProject, List<ICompilationUnit> batch, IProgressMonitor monitor) {
+      List<Fingerprint> fingerprints = new ArrayList<Fingerprint>();
+      ASTParser parser = ASTParser.newParser(AST.JLS10);
+      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+      parser.setProject(javaProject);
+      parser.setResolveBindings(true);
+      parser.createASTs(batch.toArray(new ICompilationUnit[batch.size()]), new String[0], new ASTRequestor() {
+         @Override
+         public void acceptAST(ICompilationUnit source, CompilationUnit compilationUnit) {
+            CloneFingerprintVisitor visitor = new CloneFingerprintVisitor(null, minSize);
+            compilationUnit.accept(visitor);
+            fingerprints.addAll(visitor.getFingerprints());
+         }
+      }, monitor);
+      if (monitor.isCanceled()) {
+         throw new OperationCanceledException();
+      }
+      return fingerprints;
+   }
+
+   /**
+    * Groups the fingerprinted methods into clone groups, largest first.
+    */
+   public List<CloneGroup> detect(List<Fingerprint> fingerprints) {
+      int n = fingerprints.size();
+      int[] parent = new int[n], type = new int[n];
+      for (int i = 0; i < n; i++) {
+         parent[i] = i;
+      }
+
+      // Type-1 and Type-2: one bucket per fingerprint. Type-3 needs one representative per normalized bucket only.
+      Map<Long, Integer> exactBuckets = new HashMap<Long, Integer>();
+      Map<Long, Integer> normalizedBuckets = new HashMap<Long, Integer>();
+      List<Integer> representatives = new ArrayList<Integer>();
+      for (int i = 0; i < n; i++) {
+         Fingerprint f = fingerprints.get(i);
+         Integer first = exactBuckets.putIfAbsent(f.exact, i);
+         if (first != null) {
+            // Identical bodies also share the normalized bucket; joining that too would make the pair Type-2.
+            union(parent, type, first, i, TYPE_1);
+            continue;
+         }
+         first = normalizedBuckets.putIfAbsent(f.normalized, i);
+         if (first != null) {
+            union(parent, type, first, i, TYPE_2);
+         } else {
+            representatives.add(i);
+         }
+      }
+
+      // Type-3: representatives that agree on all rows of some band are candidates.
+      for (int band = 0; band < BANDS; band++) {
+         Map<Long, List<Integer>> buckets = new HashMap<Long, List<Integer>>();
+         for (int i : representatives) {
+            long[] signature = fingerprints.get(i).minHash;
+            long h = band;
+            for (int r = band * ROWS; r < (band + 1) * ROWS; r++) {
+               h = mix(h * 31 + signature[r]);
+            }
+            List<Integer> bucket = buckets.computeIfAbsent(h, k -> new ArrayList<Integer>());
+            for (int k = bucket.size() - 1, probes = 0; k >= 0 && probes < MAX_BUCKET_PROBES; k--) {
+               int j = bucket.get(k);
+               if (find(parent, i) == find(parent, j)) {
+                  continue;
+               }
+               probes++;
+               if (estimate(fingerprints.get(i), fingerprints.get(j)) >= similarity) {
+                  union(parent, type, j, i, TYPE_3);
+               }
+            }
+            bucket.add(i);
+         }
+      }
+
+      Map<Integer, List<Integer>> members = new HashMap<Integer, List<Integer>>();
+      for (int i = 0; i < n; i++) {
+         members.computeIfAbsent(find(parent, i), k -> new ArrayList<Integer>()).add(i);
+      }
+      List<CloneGroup> groups = new ArrayList<CloneGroup>();
+      for (Map.Entry<Integer, List<Integer>> e : members.entrySet()) {
+         if (e.getValue().size() < 2) {
+            continue;
+         }
+         int[] methodKeys = new int[e.getValue().size()];
+         for (int k = 0; k < methodKeys.length; k++) {
+            methodKeys[k] = fingerprints.get(e.getValue().get(k)).methodKey;
+         }
+         groups.add(new CloneGroup(type[e.getKey()], methodKeys));
+      }
+      groups.sort((x, y) -> y.methodKeys.length - x.methodKeys.length);
+      return groups;
+   }
+
+   private static double estimate(Fingerprint a, Fingerprint b) {
+      int equal = 0;
+      for (int h = 0; h < a.minHash.length; h++) {
+         if (a.minHash[h] == b.minHash[h]) {
+            equal++;
+         }
+      }
+      return (double) equal / a.minHash.length;
+   }
+
+   private static long mix(long h) {
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   private static int find(int[] parent, int i) {
+      while (parent[i] != i) {
+         parent[i] = parent[parent[i]];
+         i = parent[i];
+      }
+      return i;
+   }
+
+   /**
+    * Joins the groups of i and j; the joined group has the weakest type of both and the pair.
+    */
+   private static void union(int[] parent, int[] type, int i, int j, int pairType) {
+      int ri = find(parent, i), rj = find(parent, j);
+      int joinedType = Math.max(pairType, Math.max(type[ri], type[rj]));
+      parent[rj] = ri;
+      type[ri] = joinedType;
+   }
+}
@@ -0,0 +1,309 @@
+/*
+ * @(#) DeclarationIndex.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.osgi.framework.FrameworkUtil;
+
+import graph.model.GClassNode;
+import graph.model.GConnection;
+import graph.model.GMethodNode;
+import graph.model.GModel;
+import graph.model.GModelBuilder;
+import graph.model.GNode;
+import graph.model.GPackageNode;
+import graph.model.GSymbolTable;
+
+/**
+ * Persists the package, class and method declarations and the outgoing calls of every compilation unit,
+ * keyed by the unit's handle identifier and modification stamp. Units whose stamp
+ * did not change since the last analysis are restored without being parsed.
+ */
+public class DeclarationIndex {
+   private static final int    MAGIC        = 0x4344504F; // "CDPO"
+   private static final int    VERSION      = 3;
+   private static final String INDEX_FILE   = "declaration.idx";
+
+   private static final byte   KIND_PACKAGE = 0;
+   private static final byte   KIND_CLASS   = 1;
+   private static final byte   KIND_METHOD  = 2;
+   private static final byte   KIND_CALL    = 3; // id calls parent at the offset in label
+
+   private static DeclarationIndex singleton = null;
+
+   private final File           file;
+   private Map<String, Entry>   entries = new HashMap<String, Entry>();
+   private boolean              loaded  = false;
+
+   private static class Entry {
+      long         stamp;
+      List<Record> records = new ArrayList<Record>();
+   }
+
+   private static class Record {
+      byte   kind;
+      String id, name, parent, prjName, pkgName, className, label;
+   }
+
+   public DeclarationIndex(File file) {
+      this.file = file;
+   }
+
+   public static synchronized DeclarationIndex instance() {
+      if (singleton == null) {
+         File stateDir = Platform.getStateLocation(FrameworkUtil.getBundle(DeclarationIndex.class)).toFile();
+         singleton = new DeclarationIndex(new File(stateDir, INDEX_FILE));
+      }
+      return singleton;
+   }
+
+   public static long stampOf(ICompilationUnit iUnit) {
+      IResource resource = iUnit.getResource();
+      return resource == null ? IResource.NULL_STAMP : resource.getModificationStamp();
+   }
+
+   public synchronized boolean isFresh(ICompilationUnit iUnit) {
+      load();
+      Entry entry = entries.get(iUnit.getHandleIdentifier());
+      long stamp = stampOf(iUnit);
+      return entry != null && stamp != IResource.NULL_STAMP && entry.stamp == stamp;
+   }
+
+   /**
+    * Adds the indexed nodes of a unit to the builder. The caller holds the builder lock.
+    */
+   public synchronized void restore(ICompilationUnit iUnit, GModelBuilder builder) {
+      String unitKey = iUnit.getHandleIdentifier();
+      Entry entry = entries.get(unitKey);
+      if (entry == null) {
+         return;
+      }
+      GSymbolTable symbols = GSymbolTable.instance();
+      for (Record r : entry.records) {
+         if (r.kind == KIND_CALL) {
+            builder.addCall(symbols.keyOf(r.id), symbols.keyOf(r.parent), Integer.parseInt(r.label));
+            continue;
+         }
+         if (builder.containsNode(r.id)) {
+            continue;
+         }
+         GNode n;
+         if (r.kind == KIND_PACKAGE) {
+            n = new GPackageNode(r.id, r.name, r.parent);
+         } else if (r.kind == KIND_CLASS) {
+            GClassNode classNode = new GClassNode(r.id, r.name, r.parent);
+            classNode.setPrjName(r.prjName);
+            classNode.setPkgName(r.pkgName);
+            n = classNode;
+         } else {
+            n = new GMethodNode(r.id, r.name, r.parent).setPrjName(r.prjName).setPkgName(r.pkgName).setClassName(r.className);
+         }
+         builder.addNode(n);
+         if (r.kind == KIND_PACKAGE) {
+            continue;
+         }
+         builder.addUnitNode(unitKey, n);
+         GNode parentNode = builder.getNode(r.parent);
+         if (parentNode != null) {
+            builder.addConnection(parentNode, n, r.label);
+         }
+      }
+   }
+
+   /**
+    * Replaces the entries of the given units with their nodes in the model
+    * and drops entries of units that are no longer part of the analysis.
+    *
+    * @param allUnits every unit of the analysis, or null to keep the entries of units not parsed.
+    */
+   public synchronized void capture(GModel model, Collection<ICompilationUnit> parsedUnits, Collection<ICompilationUnit> allUnits) {
+      load();
+      Map<GNode, String> parentLabels = new HashMap<GNode, String>();
+      for (GConnection con : model.getConnections()) {
+         if (con.getKind() == GConnection.CONTAINS) {
+            parentLabels.put(con.getDestination(), con.getLabel());
+         }
+      }
+      for (ICompilationUnit iUnit : parsedUnits) {
+         String unitKey = iUnit.getHandleIdentifier();
+         List<GNode> declared = model.getUnitNodes().get(unitKey);
+         if (declared == null) {
+            entries.remove(unitKey);
+            continue;
+         }
+         Entry entry = new Entry();
+         entry.stamp = stampOf(iUnit);
+         Set<String> packages = new HashSet<String>();
+         for (GNode n : declared) {
+            if (n instanceof GClassNode && packages.add(n.getParent())) {
+               GNode pkgNode = model.getNode(n.getParentKey());
+               if (pkgNode != null) {
+                  entry.records.add(toRecord(pkgNode, null));
+               }
+            }
+            entry.records.add(toRecord(n, parentLabels.get(n)));
+         }
+         for (GNode n : declared) {
+            for (int i = 0, degree = model.getOutDegree(n); i < degree; i++) {
+               if (model.getConnectionKind(n, i) == GConnection.CALLS) {
+                  entry.records.add(toCallRecord(n, model.getConnectedTo(n, i), model.getConnectionOffset(n, i)));
+               }
+            }
+         }
+         entries.put(unitKey, entry);
+      }
+      if (allUnits == null) {
+         return;
+      }
+      Set<String> liveKeys = new HashSet<String>();
+      for (ICompilationUnit iUnit : allUnits) {
+         liveKeys.add(iUnit.getHandleIdentifier());
+      }
+      entries.keySet().retainAll(liveKeys);
+   }
+
+   private static Record toCallRecord(GNode caller, GNode callee, int offset) {
+      Record r = new Record();
+      r.kind = KIND_CALL;
+      r.id = caller.getId();
+      r.name = "";
+      r.parent = callee.getId();
+      r.label = String.valueOf(offset);
+      return r;
+   }
+
+   private static Record toRecord(GNode n, String label) {
+      Record r = new Record();
+      r.id = n.getId();
+      r.name = n.getName();
+      r.parent = n.getParent();
+      r.label = label;
+      if (n instanceof GPackageNode) {
+         r.kind = KIND_PACKAGE;
+      } else if (n instanceof GClassNode) {
+         r.kind = KIND_CLASS;
+         r.prjName = ((GClassNode) n).getPrjName();
+         r.pkgName = ((GClassNode) n).getPkgName();
+      } else {
+         GMethodNode m = (GMethodNode) n;
+         r.kind = KIND_METHOD;
+         r.prjName = m.getPrjName();
+         r.pkgName = m.getPkgName();
+         r.className = m.getClassName();
+      }
+      return r;
+   }
+
+   private void load() {
+      if (loaded) {
+         return;
+      }
+      loaded = true;
+      if (!file.exists()) {
+         return;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return; // Unknown format, rebuilt on the next save.
+         }
+         int unitCount = in.readInt();
+         for (int i = 0; i < unitCount; i++) {
+            String unitKey = in.readUTF();
+            Entry entry = new Entry();
+            entry.stamp = in.readLong();
+            int recordCount = in.readInt();
+            for (int j = 0; j < recordCount; j++) {
+               Record r = new Record();
+               r.kind = in.readByte();
+               r.id = in.readUTF();
+               r.name = in.readUTF();
+               r.parent = in.readUTF();
+               r.label = readOptional(in);
+               r.prjName = readOptional(in);
+               r.pkgName = readOptional(in);
+               r.className = readOptional(in);
+               entry.records.add(r);
+            }
+            entries.put(unitKey, entry);
+         }
+      } catch (IOException e) {
+         entries.clear();
+         e.printStackTrace();
+      }
+   }
+
+   public synchronized void save() {
+      File tmp = new File(file.getPath() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(entries.size());
+         for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeLong(e.getValue().stamp);
+            out.writeInt(e.getValue().records.size());
+            for (Record r : e.getValue().records) {
+               out.writeByte(r.kind);
+               out.writeUTF(r.id);
+               out.writeUTF(r.name);
+               out.writeUTF(r.parent);
+               writeOptional(out, r.label);
+               writeOptional(out, r.prjName);
+               writeOptional(out, r.pkgName);
+               writeOptional(out, r.className);
+            }
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+         return;
+      }
+      // If the index cannot be replaced, the next analysis starts without it and saves again.
+      try {
+         try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+         tmp.delete();
+      }
+   }
+
+   private static void writeOptional(DataOutputStream out, String s) throws IOException {
+      out.writeBoolean(s != null);
+      if (s != null) {
+         out.writeUTF(s);
+      }
+   }
+
+   private static String readOptional(DataInputStream in) throws IOException {
+      return in.readBoolean() ? in.readUTF() : null;
+   }
+}
@@ -0,0 +1,303 @@
+/*
+ * @(#) FeatureEnvyAnalyzer.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import graph.model.GClassNode;
+import graph.model.GModel;
+import graph.model.GNode;
+import visitor.MemberAccessVisitor;
+
+/**
+ * Ranks Move Method destinations by feature envy: a method envies a class when it
+ * accesses more fields and methods of that class than of its own. The candidates of a
+ * method are the classes it accesses more often than its own class, ranked by the number
+ * of accesses, and scored by their share of all accesses the method makes.
+ * <p>
+ * Scores are cached per method and grouped by the compilation unit declaring the method.
+ * A unit is parsed again only when its modification stamp changed or it was invalidated,
+ * and projects are parsed in parallel.
+ */
+public class FeatureEnvyAnalyzer {
+   private static final String JAVANATURE = "org.eclipse.jdt.core.javanature";
+
+   private static FeatureEnvyAnalyzer singleton = null;
+
+   private final Map<Integer, Scores>   scores = new ConcurrentHashMap<Integer, Scores>();
+   private final Map<String, UnitEntry> units  = new ConcurrentHashMap<String, UnitEntry>();
+   private int                          parallelism = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * A ranked move destination for a method.
+    */
+   public static class Suggestion {
+      public final int    methodKey, classKey, accesses;
+      public final double score;
+
+      Suggestion(int methodKey, int classKey, int accesses, double score) {
+         this.methodKey = methodKey;
+         this.classKey = classKey;
+         this.accesses = accesses;
+         this.score = score;
+      }
+   }
+
+   /**
+    * The candidate destinations of one method, best first.
+    */
+   private static class Scores {
+      final int   methodKey, total;
+      final int[] classKeys, accesses;
+
+      Scores(int methodKey, int total, int[] classKeys, int[] accesses) {
+         this.methodKey = methodKey;
+         this.total = total;
+         this.classKeys = classKeys;
+         this.accesses = accesses;
+      }
+   }
+
+   private static class UnitEntry {
+      final long  stamp;
+      final int[] methodKeys;
+
+      UnitEntry(long stamp, int[] methodKeys) {
+         this.stamp = stamp;
+         this.methodKeys = methodKeys;
+      }
+   }
+
+   public static synchronized FeatureEnvyAnalyzer instance() {
+      if (singleton == null) {
+         singleton = new FeatureEnvyAnalyzer();
+      }
+      return singleton;
+   }
+
+   /**
+    * Number of projects parsed concurrently. 1 keeps the analysis serial.
+    */
+   public FeatureEnvyAnalyzer setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+      return this;
+   }
+
+   /**
+    * Drops the cached scores of the methods declared in the unit.
+    */
+   public void invalidate(ICompilationUnit iUnit) {
+      UnitEntry entry = units.remove(iUnit.getHandleIdentifier());
+      if (entry != null) {
+         for (int methodKey : entry.methodKeys) {
+            scores.remove(methodKey);
+         }
+      }
+   }
+
+   /**
+    * Drops every cached score, e.g. after projects were opened, closed or removed.
+    */
+   public void invalidateAll() {
+      units.clear();
+      scores.clear();
+   }
+
+   /**
+    * Scores the methods of every unit in the workspace whose cached scores are missing or stale.
+    *
+    * @throws OperationCanceledException if the monitor is canceled; units scored so far stay cached.
+    */
+   public void analyze(IProgressMonitor monitor) {
+      List<IJavaProject> javaProjects = new ArrayList<IJavaProject>();
+      try {
+         for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            if (project.isOpen() && project.isNatureEnabled(JAVANATURE)) {
+               javaProjects.add(JavaCore.create(project));
+            }
+         }
+      } catch (CoreException e) {
+         e.printStackTrace();
+         return;
+      }
+      SubMonitor progress = SubMonitor.convert(monitor, "Ranking move method destinations", javaProjects.size());
+      if (parallelism == 1 || javaProjects.size() < 2) {
+         for (IJavaProject javaProject : javaProjects) {
+            analyzeProject(javaProject, progress.split(1));
+         }
+         return;
+      }
+      IProgressMonitor cancelOnly = new NullProgressMonitor() {
+         @Override
+         public boolean isCanceled() {
+            return progress.isCanceled();
+         }
+      };
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+         for (IJavaProject javaProject : javaProjects) {
+            tasks.add(pool.submit(() -> analyzeProject(javaProject, cancelOnly)));
+         }
+         for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).get();
+            progress.split(1).subTask(javaProjects.get(i).getElementName());
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new OperationCanceledException();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof OperationCanceledException) {
+            throw (OperationCanceledException) e.getCause();
+         }
+         e.printStackTrace();
+      } finally {
+         pool.shutdownNow();
+         try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private void analyzeProject(IJavaProject javaProject, IProgressMonitor monitor) {
+      try {
+         List<ICompilationUnit> stale = new ArrayList<ICompilationUnit>();
+         for (IPackageFragment iPackage : javaProject.getPackageFragments()) {
+            if (iPackage.getKind() != IPackageFragmentRoot.K_SOURCE) {
+               continue;
+            }
+            for (ICompilationUnit iUnit : iPackage.getCompilationUnits()) {
+               UnitEntry entry = units.get(iUnit.getHandleIdentifier());
+               long stamp = DeclarationIndex.stampOf(iUnit);
+               if (entry == null || stamp == IResource.NULL_STAMP || entry.stamp != stamp) {
+                  stale.add(iUnit);
+               }
+            }
+         }
+         if (stale.isEmpty()) {
+            return;
+         }
+         ASTParser parser = ASTParser.newParser(AST.JLS10);
+         parser.setKind(ASTParser.K_COMPILATION_UNIT);
+         parser.setProject(javaProject);
+         parser.setResolveBindings(true);
+         parser.createASTs(stale.toArray(new ICompilationUnit[stale.size()]), new String[0], new ASTRequestor() {
+            @Override
+            public void acceptAST(ICompilationUnit source, CompilationUnit compilationUnit) {
+               MemberAccessVisitor visitor = new MemberAccessVisitor();
+               compilationUnit.accept(visitor);
+               update(source, visitor.getAccesses());
+            }
+         }, monitor);
+         if (monitor.isCanceled()) {
+            throw new OperationCanceledException();
+         }
+      } catch (JavaModelException e) {
+         e.printStackTrace();
+      }
+   }
+
+   private void update(ICompilationUnit iUnit, List<MemberAccessVisitor.Accesses> accesses) {
+      invalidate(iUnit);
+      int[] methodKeys = new int[accesses.size()];
+      for (int i = 0; i < accesses.size(); i++) {
+         Scores s = rank(accesses.get(i));
+         methodKeys[i] = s.methodKey;
+         scores.put(s.methodKey, s);
+      }
+      units.put(iUnit.getHandleIdentifier(), new UnitEntry(DeclarationIndex.stampOf(iUnit), methodKeys));
+   }
+
+   private static Scores rank(MemberAccessVisitor.Accesses a) {
+      int own = 0, total = 0;
+      for (int i = 0; i < a.classKeys.length; i++) {
+         total += a.counts[i];
+         if (a.classKeys[i] == a.classKey) {
+            own = a.counts[i];
+         }
+      }
+      List<Integer> candidates = new ArrayList<Integer>();
+      for (int i = 0; i < a.classKeys.length; i++) {
+         if (a.classKeys[i] != a.classKey && a.counts[i] > own) {
+            candidates.add(i);
+         }
+      }
+      candidates.sort((x, y) -> a.counts[y] - a.counts[x]);
+      int[] classKeys = new int[candidates.size()], accesses = new int[candidates.size()];
+      for (int i = 0; i < candidates.size(); i++) {
+         classKeys[i] = a.classKeys[candidates.get(i)];
+         accesses[i] = a.counts[candidates.get(i)];
+      }
+      return new Scores(a.methodKey, total, classKeys, accesses);
+   }
+
+   /**
+    * @return the ranked destinations of the method that are classes in the model, best first.
+    */
+   public List<Suggestion> getSuggestions(GModel model, GNode method, int max) {
+      Scores s = scores.get(method.getKey());
+      if (s == null) {
+         return Collections.emptyList();
+      }
+      List<Suggestion> result = new ArrayList<Suggestion>();
+      for (int i = 0; i < s.classKeys.length && result.size() < max; i++) {
+         if (model.getNode(s.classKeys[i]) instanceof GClassNode) {
+            result.add(new Suggestion(s.methodKey, s.classKeys[i], s.accesses[i], (double) s.accesses[i] / s.total));
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return the best destination of each method in the model, for the methods with the highest scores.
+    */
+   public List<Suggestion> getTopSuggestions(GModel model, int max) {
+      List<Suggestion> result = new ArrayList<Suggestion>();
+      for (Scores s : scores.values()) {
+         GNode method = model.getNode(s.methodKey);
+         if (method == null) {
+            continue;
+         }
+         List<Suggestion> best = getSuggestions(model, method, 1);
+         if (!best.isEmpty()) {
+            result.add(best.get(0));
+         }
+      }
+      result.sort((x, y) -> x.score != y.score ? Double.compare(y.score, x.score) : y.accesses - x.accesses);
+      return result.size() > max ? new ArrayList<Suggestion>(result.subList(0, max)) : result;
+   }
+}
@@ -0,0 +1,47 @@
+/*
+ * @(#) FeatureEnvyJob.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Scores the workspace for move method suggestions off the UI thread.
+ */
+public class FeatureEnvyJob extends Job {
+   private final FeatureEnvyAnalyzer analyzer;
+   private final Runnable            onDone;
+
+   /**
+    * @param onDone called on the job thread once every stale unit has been scored.
+    */
+   public FeatureEnvyJob(FeatureEnvyAnalyzer analyzer, Runnable onDone) {
+      super("Ranking move method destinations");
+      this.analyzer = analyzer;
+      this.onDone = onDone;
+      // Scores are kept by key; a full analysis must not rebuild the symbol table under a scoring run.
+      setRule(AnalysisJob.MODEL_RULE);
+   }
+
+   @Override
+   protected IStatus run(IProgressMonitor monitor) {
+      try {
+         analyzer.analyze(monitor);
+      } catch (OperationCanceledException e) {
+         return Status.CANCEL_STATUS;
+      }
+      if (monitor.isCanceled()) {
+         return Status.CANCEL_STATUS;
+      }
+      onDone.run();
+      return Status.OK_STATUS;
+   }
+}
@@ -0,0 +1,436 @@
+/*
+ * @(#) HeadlessAnalyzer.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+
+import graph.export.GModelExporter;
+import graph.model.GClassNode;
+import graph.model.GCallBuffer;
+import graph.model.GConnection;
+import graph.model.GModel;
+import graph.model.GModelBuilder;
+import graph.model.GModelSnapshot;
+import graph.model.GNode;
+import graph.model.GPackageNode;
+import util.UtilMetrics;
+import visitor.CallGraphVisitor;
+import visitor.DeclarationVisitor;
+
+/**
+ * Builds the declaration graph of a source tree without a workspace or workbench,
+ * e.g. on a build machine, and writes it to a file. Sources are parsed against a
+ * plain file system environment in parallel batches; the visit into the model is
+ * serialized as in ProjectAnalyzer. Call edges are collected per batch without the
+ * lock and merged into the model once every batch is done.
+ * <p>
+ * Usage, with org.eclipse.jdt.core and its dependencies on the classpath:
+ * <pre>
+ * java analysis.HeadlessAnalyzer -source src[:more/src] [-classpath a.jar:b.jar]
+ *      [-project name] [-compliance 1.8] [-threads n] [-structure] [-snapshot graph.snap]
+ *      [-metrics metrics.tsv] -out graph.tsv
+ * </pre>
+ * With -structure, the sources are parsed without bindings and method bodies, and only the
+ * package, type and method hierarchy is built, without call connections.
+ * With -snapshot, the model is read from the snapshot file instead of being built, as long
+ * as no source file was added, removed or modified since the snapshot was written. With
+ * -metrics, phase timings and counters are collected and written to the file at the end,
+ * see UtilMetrics.
+ * The output has one tab-separated line per node, "N kind id name parent", followed
+ * by one line per connection, "E source destination label". Containment connections
+ * are labeled "offset: n" and calls "call: n". An output file ending in .graphml, .dot
+ * or .ndjson is streamed in that format instead, see GModelExporter.
+ * <p>
+ * A unit whose visit fails is left out of the model as a whole. The exit code is 0 on
+ * success, 1 if the output could not be written, 2 for invalid options and 3 if any unit
+ * or parse task failed; the graph of the other units is still written then.
+ */
+public class HeadlessAnalyzer {
+   private static final int BATCHES_PER_THREAD = 4;
+
+   private String[]         sourceRoots    = new String[0];
+   private String[]         classpath      = new String[0];
+   private String           prjName        = "headless";
+   private String           compliance     = JavaCore.VERSION_1_8;
+   private int              parallelism    = Runtime.getRuntime().availableProcessors();
+   private PrintStream      report         = System.out;
+   private File             snapshot       = null;
+   private boolean          structureOnly  = false;
+
+   private GModelBuilder    builder;
+   private List<GCallBuffer> callBuffers;
+   private final AtomicInteger parsedUnits = new AtomicInteger();
+   private final AtomicInteger failedUnits = new AtomicInteger();
+   private final AtomicInteger failedTasks = new AtomicInteger();
+
+   public HeadlessAnalyzer setSourceRoots(String... sourceRoots) {
+      this.sourceRoots = sourceRoots;
+      return this;
+   }
+
+   public HeadlessAnalyzer setClasspath(String... classpath) {
+      this.classpath = classpath;
+      return this;
+   }
+
+   /**
+    * The project name recorded in the node ids, in place of the workspace project.
+    */
+   public HeadlessAnalyzer setProjectName(String prjName) {
+      this.prjName = prjName;
+      return this;
+   }
+
+   public HeadlessAnalyzer setCompliance(String compliance) {
+      this.compliance = compliance;
+      return this;
+   }
+
+   public HeadlessAnalyzer setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+      return this;
+   }
+
+   /**
+    * Builds only the declaration hierarchy, see ProjectAnalyzer.setStructureOnly.
+    */
+   public HeadlessAnalyzer setStructureOnly(boolean structureOnly) {
+      this.structureOnly = structureOnly;
+      return this;
+   }
+
+   /**
+    * Reads the model from the snapshot file if it is still fresh, and writes it there otherwise.
+    */
+   public HeadlessAnalyzer setSnapshot(File snapshot) {
+      this.snapshot = snapshot;
+      return this;
+   }
+
+   public HeadlessAnalyzer setReport(PrintStream report) {
+      this.report = report;
+      return this;
+   }
+
+   public static void main(String[] args) {
+      HeadlessAnalyzer analyzer = new HeadlessAnalyzer();
+      File out = null, metricsFile = null;
+      try {
+         for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+            case "-source":
+               analyzer.setSourceRoots(value.split(File.pathSeparator));
+               break;
+            case "-classpath":
+               analyzer.setClasspath(value.split(File.pathSeparator));
+               break;
+            case "-project":
+               analyzer.setProjectName(value);
+               break;
+            case "-compliance":
+               analyzer.setCompliance(value);
+               break;
+            case "-threads":
+               analyzer.setParallelism(Integer.parseInt(value));
+               break;
+            case "-structure":
+               analyzer.setStructureOnly(true);
+               continue;
+            case "-snapshot":
+               analyzer.setSnapshot(new File(value));
+               break;
+            case "-metrics":
+               metricsFile = new File(value);
+               UtilMetrics.instance().setEnabled(true);
+               break;
+            case "-out":
+               out = new File(value);
+               break;
+            default:
+               usage("Unknown option " + args[i]);
+               return;
+            }
+            i++;
+         }
+      } catch (NullPointerException | NumberFormatException e) {
+         usage("Missing or invalid option value");
+         return;
+      }
+      if (analyzer.sourceRoots.length == 0 || out == null) {
+         usage("-source and -out are required");
+         return;
+      }
+      try {
+         analyzer.write(analyzer.analyze(), out);
+         if (metricsFile != null) {
+            UtilMetrics.instance().dump(metricsFile);
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+         System.exit(1);
+      }
+      if (analyzer.hasFailures()) {
+         System.exit(3);
+      }
+   }
+
+   /**
+    * @return true if the last analyze() skipped a unit or lost a parse task, so the model is incomplete.
+    */
+   public boolean hasFailures() {
+      return failedUnits.get() > 0 || failedTasks.get() > 0;
+   }
+
+   private static void usage(String message) {
+      System.err.println(message);
+      System.err.println("Usage: HeadlessAnalyzer -source <dirs> [-classpath <jars>] [-project <name>]" //
+            + " [-compliance <level>] [-threads <n>] [-structure] [-snapshot <file>] [-metrics <file>] -out <file>");
+      System.exit(2);
+   }
+
+   /**
+    * Parses every .java file below the source roots and returns the resulting model.
+    */
+   public GModel analyze() throws IOException {
+      UtilMetrics metrics = UtilMetrics.instance();
+      long enumerateStart = metrics.start();
+      List<String> files = new ArrayList<String>();
+      for (String root : sourceRoots) {
+         try (Stream<Path> paths = Files.walk(new File(root).toPath())) {
+            files.addAll(paths.filter(p -> p.toString().endsWith(".java")) //
+                  .map(p -> p.toAbsolutePath().toString()).collect(Collectors.toList()));
+         }
+      }
+      long sourceStamp = snapshot == null ? 0 : sourceStamp(files);
+      metrics.stop(UtilMetrics.Phase.ENUMERATE, enumerateStart);
+      if (snapshot != null) {
+         long start = System.nanoTime();
+         GModel saved = GModelSnapshot.read(snapshot, sourceStamp, 0);
+         if (saved != null) {
+            report.printf("Read %d nodes and %d connections from %s in %.3f s%n", saved.getNodes().size(), //
+                  saved.getConnections().size(), snapshot, (System.nanoTime() - start) / 1e9);
+            return saved;
+         }
+      }
+      builder = new GModelBuilder(0);
+      callBuffers = Collections.synchronizedList(new ArrayList<GCallBuffer>());
+      parsedUnits.set(0);
+      failedUnits.set(0);
+      failedTasks.set(0);
+
+      long start = System.nanoTime();
+      parseInParallel(files);
+      long parseNanos = System.nanoTime() - start;
+      long publishStart = metrics.start();
+      int calls = 0;
+      for (GCallBuffer buffer : callBuffers) {
+         builder.addCalls(buffer);
+         calls += buffer.size();
+      }
+      GModel model = builder.build();
+      metrics.stop(UtilMetrics.Phase.PUBLISH, publishStart);
+      metrics.count(UtilMetrics.Counter.NODES_CREATED, model.getNodes().size());
+      metrics.count(UtilMetrics.Counter.EDGES_CREATED, model.getConnections().size());
+      builder = null;
+      callBuffers = null;
+
+      double seconds = parseNanos / 1e9;
+      report.printf("Parsed %d of %d files with %d threads in %.2f s (%.1f files/s), %d failed%n", //
+            parsedUnits.get(), files.size(), parallelism, seconds, parsedUnits.get() / seconds, failedUnits.get());
+      if (failedTasks.get() > 0) {
+         report.printf("%d parse tasks failed; their remaining files are missing from the model%n", failedTasks.get());
+      }
+      report.printf("Built %d nodes and %d connections from %d call sites%n", model.getNodes().size(), //
+            model.getConnections().size(), calls);
+      // An incomplete model is not saved, so the next run analyzes the failed units again.
+      if (snapshot != null && !hasFailures()) {
+         GModelSnapshot.write(model, sourceStamp, snapshot);
+      }
+      return model;
+   }
+
+   /**
+    * Combines the path, size and modification time of every source file with the options
+    * that change the model.
+    */
+   private long sourceStamp(List<String> files) {
+      long stamp = (prjName + compliance + structureOnly + String.join(File.pathSeparator, classpath)).hashCode();
+      for (String f : files) {
+         File file = new File(f);
+         stamp = stamp * 31 + f.hashCode();
+         stamp = stamp * 31 + file.lastModified();
+         stamp = stamp * 31 + file.length();
+      }
+      return stamp;
+   }
+
+   private void parseInParallel(List<String> files) {
+      // Several batches per thread keep the threads busy when some files are much larger than others.
+      int batchCount = Math.min(files.size(), parallelism * BATCHES_PER_THREAD);
+      List<List<String>> batches = new ArrayList<List<String>>();
+      for (int i = 0; i < batchCount; i++) {
+         batches.add(new ArrayList<String>());
+      }
+      for (int i = 0; i < files.size(); i++) {
+         batches.get(i % batchCount).add(files.get(i));
+      }
+      if (parallelism == 1) {
+         for (List<String> batch : batches) {
+            try {
+               parseBatch(batch);
+            } catch (RuntimeException e) {
+               failedTasks.incrementAndGet();
+               e.printStackTrace();
+            }
+         }
+         return;
+      }
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+         for (List<String> batch : batches) {
+            tasks.add(pool.submit(() -> parseBatch(batch)));
+         }
+         for (ForkJoinTask<?> task : tasks) {
+            try {
+               task.get();
+            } catch (ExecutionException e) {
+               failedTasks.incrementAndGet();
+               e.printStackTrace();
+            }
+         }
+      } catch (InterruptedException e) {
+         failedTasks.incrementAndGet();
+         Thread.currentThread().interrupt();
+      } finally {
+         pool.shutdownNow();
+         try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private void parseBatch(List<String> batch) {
+      Map<String, String> options = new HashMap<String, String>();
+      JavaCore.setComplianceOptions(compliance, options);
+      ASTParser parser = ASTParser.newParser(AST.JLS10);
+      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+      parser.setCompilerOptions(options);
+      parser.setEnvironment(classpath, sourceRoots, null, true);
+      if (structureOnly) {
+         parser.setStatementsRecovery(false);
+         parser.setIgnoreMethodBodies(true);
+      } else {
+         parser.setResolveBindings(true);
+         // Recovered bindings keep declarations whose signatures mention types missing from the classpath.
+         parser.setBindingsRecovery(true);
+      }
+      GCallBuffer calls = new GCallBuffer();
+      UtilMetrics metrics = UtilMetrics.instance();
+      // The visits run inside createASTs; their time is taken out of the parse time.
+      long[] visitNanos = { 0 };
+      long parseStart = metrics.start();
+      parser.createASTs(batch.toArray(new String[batch.size()]), null, new String[0], new FileASTRequestor() {
+         @Override
+         public void acceptAST(String sourceFilePath, CompilationUnit compilationUnit) {
+            long visitStart = metrics.start();
+            // The unit is visited into a model of its own and merged only once both visits
+            // have succeeded, so a unit that fails halfway leaves nothing behind.
+            GModelBuilder unitBuilder = new GModelBuilder(0);
+            GCallBuffer unitCalls = new GCallBuffer();
+            DeclarationVisitor declVisitor = new DeclarationVisitor(unitBuilder, prjName);
+            CallGraphVisitor callVisitor = new CallGraphVisitor(unitCalls, prjName);
+            GModel unit;
+            try {
+               compilationUnit.accept(declVisitor);
+               if (!structureOnly) {
+                  compilationUnit.accept(callVisitor);
+               }
+               unit = unitBuilder.build();
+            } catch (RuntimeException e) {
+               // Unresolved bindings or a unit in the default package; keep going with the rest.
+               failedUnits.incrementAndGet();
+               System.err.println("Skipped " + sourceFilePath + ": " + e);
+               return;
+            }
+            synchronized (builder) {
+               builder.addUnit(sourceFilePath, unit);
+            }
+            calls.addAll(unitCalls);
+            parsedUnits.incrementAndGet();
+            if (visitStart != 0) {
+               long nanos = System.nanoTime() - visitStart;
+               visitNanos[0] += nanos;
+               metrics.record(UtilMetrics.Phase.VISIT, nanos);
+               metrics.count(UtilMetrics.Counter.UNITS_PARSED, 1);
+               metrics.count(UtilMetrics.Counter.BINDINGS_RESOLVED, //
+                     declVisitor.getResolvedBindings() + callVisitor.getResolvedBindings());
+            }
+         }
+      }, null);
+      if (parseStart != 0) {
+         metrics.record(UtilMetrics.Phase.PARSE, System.nanoTime() - parseStart - visitNanos[0]);
+      }
+      callBuffers.add(calls);
+   }
+
+   public void write(GModel model, File out) throws IOException {
+      long start = System.nanoTime();
+      GModelExporter.Format format = GModelExporter.Format.forFile(out.getName());
+      if (format != null) {
+         new GModelExporter(model).export(out.toPath(), format);
+         report.printf("Wrote %s in %.2f s%n", out, (System.nanoTime() - start) / 1e9);
+         return;
+      }
+      try (BufferedWriter w = Files.newBufferedWriter(out.toPath(), StandardCharsets.UTF_8)) {
+         for (GNode n : model.getNodes()) {
+            w.write("N\t" + kindOf(n) + "\t" + n.getId() + "\t" + n.getName() + "\t" + n.getParent());
+            w.newLine();
+         }
+         for (GConnection con : model.getConnections()) {
+            w.write("E\t" + con.getSource().getId() + "\t" + con.getDestination().getId() + "\t" + con.getLabel());
+            w.newLine();
+         }
+      }
+      report.printf("Wrote %s in %.2f s%n", out, (System.nanoTime() - start) / 1e9);
+   }
+
+   private static String kindOf(GNode n) {
+      if (n instanceof GPackageNode) {
+         return "package";
+      }
+      return (n instanceof GClassNode) ? "class" : "method";
+   }
+}
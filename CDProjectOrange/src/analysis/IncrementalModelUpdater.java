@@ -0,0 +1,211 @@
+/*
+ * @(#) IncrementalModelUpdater.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+import graph.model.GModel;
+import graph.model.GModelBuilder;
+import graph.provider.GModelProvider;
+
+/**
+ * Patches the graph model from Java element deltas, so that saving a file only
+ * reparses the changed compilation units instead of the whole workspace. The delta
+ * listener only records the changed units; they are analyzed in a job that shares the
+ * scheduling rule of AnalysisJob, and deltas arriving in quick succession are coalesced
+ * into one update.
+ */
+public class IncrementalModelUpdater implements IElementChangedListener {
+   private static final long COALESCE_DELAY = 200; // ms
+
+   private final Runnable onModelChanged;
+   private final Job      updateJob;
+   private boolean started = false;
+   private volatile boolean structureOnly = false;
+   private volatile AnalysisScope scope = new AnalysisScope(null);
+
+   // Guarded by pendingUnits.
+   private final Set<ICompilationUnit> pendingUnits = new LinkedHashSet<ICompilationUnit>();
+   private boolean pendingFullAnalysis = false;
+
+   /**
+    * @param onModelChanged called on the update job's thread after the model has been patched.
+    */
+   public IncrementalModelUpdater(Runnable onModelChanged) {
+      this.onModelChanged = onModelChanged;
+      this.updateJob = new Job("Updating the graph model") {
+         @Override
+         protected IStatus run(IProgressMonitor monitor) {
+            return update(monitor);
+         }
+      };
+      updateJob.setRule(AnalysisJob.MODEL_RULE);
+      updateJob.setSystem(true);
+   }
+
+   public void start() {
+      if (!started) {
+         JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+         started = true;
+      }
+   }
+
+   public void stop() {
+      if (started) {
+         JavaCore.removeElementChangedListener(this);
+         started = false;
+      }
+      synchronized (pendingUnits) {
+         pendingUnits.clear();
+         pendingFullAnalysis = false;
+      }
+      updateJob.cancel();
+   }
+
+   public boolean isStarted() {
+      return started;
+   }
+
+   /**
+    * Changed units outside the scope are left out of the model, see ProjectAnalyzer.setScope.
+    */
+   public IncrementalModelUpdater setScope(AnalysisScope scope) {
+      this.scope = scope;
+      return this;
+   }
+
+   /**
+    * Reparses changed units the way the current model was built, see ProjectAnalyzer.setStructureOnly.
+    */
+   public IncrementalModelUpdater setStructureOnly(boolean structureOnly) {
+      this.structureOnly = structureOnly;
+      return this;
+   }
+
+   @Override
+   public void elementChanged(ElementChangedEvent event) {
+      Set<ICompilationUnit> changedUnits = new LinkedHashSet<ICompilationUnit>();
+      boolean fullAnalysis = collectChangedUnits(event.getDelta(), changedUnits);
+      if (!fullAnalysis && changedUnits.isEmpty()) {
+         return;
+      }
+      synchronized (pendingUnits) {
+         pendingUnits.addAll(changedUnits);
+         pendingFullAnalysis |= fullAnalysis;
+      }
+      // Rescheduling a waiting job only moves its start; a running job runs once more.
+      updateJob.schedule(COALESCE_DELAY);
+   }
+
+   private IStatus update(IProgressMonitor monitor) {
+      List<ICompilationUnit> units;
+      boolean fullAnalysis;
+      synchronized (pendingUnits) {
+         units = new ArrayList<ICompilationUnit>(pendingUnits);
+         fullAnalysis = pendingFullAnalysis;
+         pendingUnits.clear();
+         pendingFullAnalysis = false;
+      }
+      try {
+         if (fullAnalysis) {
+            // A project was opened, closed or removed: the unit deltas are not enough.
+            FeatureEnvyAnalyzer.instance().invalidateAll();
+            new ProjectAnalyzer().setBatchParsing(true).setStructureOnly(structureOnly).setScope(scope).analyze(monitor);
+         } else if (!units.isEmpty()) {
+            updateUnits(units, monitor);
+         } else {
+            return Status.OK_STATUS;
+         }
+      } catch (OperationCanceledException e) {
+         return Status.CANCEL_STATUS;
+      } catch (CoreException e) {
+         return e.getStatus();
+      }
+      onModelChanged.run();
+      return Status.OK_STATUS;
+   }
+
+   /**
+    * Parses each unit once, then merges the results into the current model, and merges
+    * them again into a newer model if a full analysis published one meanwhile.
+    */
+   private void updateUnits(List<ICompilationUnit> units, IProgressMonitor monitor) {
+      ProjectAnalyzer analyzer = new ProjectAnalyzer().setStructureOnly(structureOnly).setScope(scope);
+      List<ProjectAnalyzer.UnitUpdate> updates = new ArrayList<ProjectAnalyzer.UnitUpdate>();
+      for (ICompilationUnit iUnit : units) {
+         if (monitor.isCanceled()) {
+            throw new OperationCanceledException();
+         }
+         FeatureEnvyAnalyzer.instance().invalidate(iUnit);
+         try {
+            updates.add(analyzer.analyzeUnit(iUnit));
+         } catch (RuntimeException e) {
+            // Unresolved bindings or a unit in the default package; its old nodes stay.
+            e.printStackTrace();
+         }
+      }
+      GModel base, next;
+      do {
+         base = GModelProvider.instance().getModel();
+         GModelBuilder builder = GModelProvider.instance().newBuilder(base);
+         for (ProjectAnalyzer.UnitUpdate update : updates) {
+            update.mergeInto(builder);
+         }
+         next = builder.build();
+      } while (!GModelProvider.instance().publish(base, next));
+   }
+
+   /**
+    * @return true if the delta affects a whole project and requires a full analysis.
+    */
+   private boolean collectChangedUnits(IJavaElementDelta delta, Set<ICompilationUnit> changedUnits) {
+      IJavaElement elem = delta.getElement();
+      switch (elem.getElementType()) {
+      case IJavaElement.JAVA_PROJECT:
+         if (delta.getKind() != IJavaElementDelta.CHANGED || //
+               (delta.getFlags() & (IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED)) != 0) {
+            return true;
+         }
+         break;
+      case IJavaElement.COMPILATION_UNIT:
+         ICompilationUnit iUnit = (ICompilationUnit) elem;
+         if (iUnit.isWorkingCopy()) {
+            iUnit = iUnit.getPrimary();
+         }
+         if (delta.getKind() != IJavaElementDelta.CHANGED || //
+               (delta.getFlags() & (IJavaElementDelta.F_CONTENT | IJavaElementDelta.F_PRIMARY_RESOURCE)) != 0) {
+            changedUnits.add(iUnit);
+         }
+         return false;
+      default:
+         break;
+      }
+      for (IJavaElementDelta child : delta.getAffectedChildren()) {
+         if (collectChangedUnits(child, changedUnits)) {
+            return true;
+         }
+      }
+      return false;
+   }
+}
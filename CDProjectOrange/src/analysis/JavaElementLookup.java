@@ -0,0 +1,106 @@
+/*
+ * @(#) JavaElementLookup.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import graph.model.GClassNode;
+import graph.model.GMethodNode;
+
+/**
+ * Resolves graph nodes to Java model elements through the Java model's type lookup,
+ * without parsing any compilation unit.
+ */
+public class JavaElementLookup {
+   private static final String JAVANATURE = "org.eclipse.jdt.core.javanature";
+
+   public static IType findType(GClassNode cNode) {
+      return findType(cNode.getPrjName(), cNode.getPkgName(), cNode.getName());
+   }
+
+   public static IType findDeclaringType(GMethodNode mNode) {
+      return findType(mNode.getPrjName(), mNode.getPkgName(), mNode.getClassName());
+   }
+
+   public static IMethod findMethod(GMethodNode mNode) {
+      IType type = findDeclaringType(mNode);
+      if (type == null) {
+         return null;
+      }
+      try {
+         for (IMethod method : type.getMethods()) {
+            if (method.getElementName().equals(mNode.getName())) {
+               return method;
+            }
+         }
+      } catch (JavaModelException e) {
+         e.printStackTrace();
+      }
+      return null;
+   }
+
+   /**
+    * @param prjName the project to search, or null to search every open Java project.
+    */
+   public static IType findType(String prjName, String pkgName, String typeName) {
+      try {
+         if (prjName != null) {
+            IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(prjName);
+            return project.isOpen() ? findType(JavaCore.create(project), pkgName, typeName) : null;
+         }
+         for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            if (!project.isOpen() || !project.isNatureEnabled(JAVANATURE)) {
+               continue;
+            }
+            IType type = findType(JavaCore.create(project), pkgName, typeName);
+            if (type != null) {
+               return type;
+            }
+         }
+      } catch (CoreException e) {
+         e.printStackTrace();
+      }
+      return null;
+   }
+
+   private static IType findType(IJavaProject javaProject, String pkgName, String typeName) throws JavaModelException {
+      String fqn = pkgName == null || pkgName.isEmpty() ? typeName : pkgName + "." + typeName;
+      IType type = javaProject.findType(fqn);
+      if (type != null && type.getCompilationUnit() != null) {
+         return type;
+      }
+      // Member types are not found by their simple name, so look inside the package.
+      for (IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+         if (root.getKind() != IPackageFragmentRoot.K_SOURCE) {
+            continue;
+         }
+         IPackageFragment iPackage = root.getPackageFragment(pkgName == null ? "" : pkgName);
+         if (!iPackage.exists()) {
+            continue;
+         }
+         for (ICompilationUnit iUnit : iPackage.getCompilationUnits()) {
+            for (IType iType : iUnit.getAllTypes()) {
+               if (iType.getElementName().equals(typeName)) {
+                  return iType;
+               }
+            }
+         }
+      }
+      return null;
+   }
+}
@@ -0,0 +1,115 @@
+/*
+ * @(#) MoveMethodQueue.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package analysis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import graph.model.GClassNode;
+import graph.model.GMethodNode;
+import util.UtilMsg;
+import util.UtilPlatform;
+
+/**
+ * Stages several move-method requests and applies them in a single Java model
+ * operation. Every affected compilation unit is formatted once and the editors
+ * are saved once, so the caller only needs to re-analyze a single time.
+ */
+public class MoveMethodQueue {
+   private final List<GMethodNode> methods      = new ArrayList<GMethodNode>();
+   private final List<GClassNode>  destinations = new ArrayList<GClassNode>();
+
+   /**
+    * @return false if the method is already queued or the destination is its own class.
+    */
+   public boolean add(GMethodNode mNode, GClassNode cNode) {
+      if (mNode.isParent(cNode)) {
+         return false;
+      }
+      for (GMethodNode queued : methods) {
+         if (queued.getId().equals(mNode.getId())) {
+            return false;
+         }
+      }
+      methods.add(mNode);
+      destinations.add(cNode);
+      return true;
+   }
+
+   public int size() {
+      return methods.size();
+   }
+
+   public void clear() {
+      methods.clear();
+      destinations.clear();
+   }
+
+   /**
+    * Moves all queued methods and clears the queue.
+    *
+    * Moves that cannot be resolved, and a failure of the move itself, are reported to the user.
+    *
+    * @return the number of methods that were moved.
+    */
+   public int apply() {
+      List<IJavaElement> elements = new ArrayList<IJavaElement>();
+      List<IJavaElement> containers = new ArrayList<IJavaElement>();
+      Set<ICompilationUnit> touchedUnits = new LinkedHashSet<ICompilationUnit>();
+      List<String> unresolved = new ArrayList<String>();
+
+      for (int i = 0; i < methods.size(); i++) {
+         IMethod method = JavaElementLookup.findMethod(methods.get(i));
+         IType type = JavaElementLookup.findType(destinations.get(i));
+         if (method == null || type == null) {
+            unresolved.add(methods.get(i).getClassName() + "." + methods.get(i).getName() + " -> " + destinations.get(i).getName());
+            continue;
+         }
+         elements.add(method);
+         containers.add(type);
+         touchedUnits.add(method.getCompilationUnit());
+         touchedUnits.add(type.getCompilationUnit());
+      }
+      clear();
+      if (!unresolved.isEmpty()) {
+         UtilMsg.openWarning("Cannot find " + String.join(", ", unresolved) + " in the workspace; these moves were dropped.");
+      }
+      if (elements.isEmpty()) {
+         return 0;
+      }
+      int moved = elements.size();
+      try {
+         JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).move( //
+               elements.toArray(new IJavaElement[elements.size()]), //
+               containers.toArray(new IJavaElement[containers.size()]), //
+               null, null, false, null);
+      } catch (JavaModelException e) {
+         e.printStackTrace();
+         // The operation stops at the failing element; a method that is gone from its class was moved.
+         moved = 0;
+         for (IJavaElement element : elements) {
+            if (!element.exists()) {
+               moved++;
+            }
+         }
+         UtilMsg.openWarning("Moving methods failed after " + moved + " of " + elements.size() + ": " + e.getMessage());
+      }
+      UtilPlatform.indentAndSave(touchedUnits);
+      return moved;
+   }
+}
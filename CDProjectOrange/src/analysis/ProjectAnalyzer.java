@@ -7,78 +7,477 @@
  */
 package analysis;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 
+import graph.model.GCallBuffer;
+import graph.model.GModel;
+import graph.model.GModelBuilder;
+import graph.model.GModelSnapshot;
+import graph.model.GSymbolTable;
 import graph.provider.GModelProvider;
+import util.UtilMetrics;
+import util.UtilPlatform;
+import visitor.CallGraphVisitor;
 import visitor.DeclarationVisitor;
 
 public class ProjectAnalyzer {
    private static final String JAVANATURE = "org.eclipse.jdt.core.javanature";
    protected String prjName, pkgName;
 
-   public void analyze() {
-      GModelProvider.instance().reset();
+   private boolean batchParsing = false;
+   private boolean structureOnly = false;
+   private int parallelism = 1;
+   private DeclarationIndex index = null;
+   private File snapshot = null;
+   private AnalysisScope scope = new AnalysisScope(null);
+   private List<ICompilationUnit> allUnits, parsedUnits;
+   private List<GCallBuffer> callBuffers;
+   private GModelBuilder builder;
+
+   /**
+    * In batch mode all source units of a project are handed to a single
+    * ASTParser.createASTs call, so they share one binding environment.
+    */
+   public ProjectAnalyzer setBatchParsing(boolean batchParsing) {
+      this.batchParsing = batchParsing;
+      return this;
+   }
+
+   /**
+    * Number of projects parsed concurrently in batch mode. 1 keeps the analysis serial.
+    */
+   public ProjectAnalyzer setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+      return this;
+   }
+
+   /**
+    * Parses without bindings, statement recovery and method bodies, which builds the
+    * package, type and method hierarchy in a fraction of the time but leaves out the call
+    * connections and the types declared inside method bodies. The declaration index is
+    * neither read nor written in this mode, since its units are recorded with their calls.
+    */
+   public ProjectAnalyzer setStructureOnly(boolean structureOnly) {
+      this.structureOnly = structureOnly;
+      return this;
+   }
+
+   /**
+    * Only the projects, source folders, packages and units in the scope are enumerated and
+    * parsed. By default the whole workspace is analyzed.
+    */
+   public ProjectAnalyzer setScope(AnalysisScope scope) {
+      this.scope = scope;
+      return this;
+   }
+
+   /**
+    * Restores units whose modification stamp matches the index instead of parsing them,
+    * and writes the updated index back once the analysis is done.
+    */
+   public ProjectAnalyzer setIndex(DeclarationIndex index) {
+      this.index = index;
+      return this;
+   }
+
+   /**
+    * Publishes the model saved in the snapshot file instead of analyzing, if no source unit
+    * was added, removed or modified since it was written, and saves the snapshot otherwise.
+    */
+   public ProjectAnalyzer setSnapshot(File snapshot) {
+      this.snapshot = snapshot;
+      return this;
+   }
+
+   public void analyze() throws CoreException {
+      analyze(null);
+   }
+
+   /**
+    * Reports progress per project and package. The model is published to the
+    * GModelProvider in one swap once every unit has been visited. Call edges are
+    * collected per project outside the builder lock and merged before the build.
+    *
+    * @throws OperationCanceledException if the monitor is canceled; the published model is then left unchanged.
+    * @throws CoreException if any project could not be analyzed; nothing is published, indexed or saved then.
+    */
+   public void analyze(IProgressMonitor monitor) throws CoreException {
+      // Keys of the old models are dropped with their table once this model replaces them.
+      GSymbolTable previousSymbols = GSymbolTable.rebuild();
+      boolean published = false;
+      builder = GModelProvider.instance().newBuilder();
+      allUnits = Collections.synchronizedList(new ArrayList<ICompilationUnit>());
+      parsedUnits = Collections.synchronizedList(new ArrayList<ICompilationUnit>());
+      callBuffers = Collections.synchronizedList(new ArrayList<GCallBuffer>());
 
       // =============================================================
       // 1st step: Project
       // =============================================================
+      UtilMetrics metrics = UtilMetrics.instance();
       try {
+         long enumerateStart = metrics.start();
+         List<IJavaProject> javaProjects = new ArrayList<IJavaProject>();
          IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
          for (IProject project : projects) {
             if (!project.isOpen() || !project.isNatureEnabled(JAVANATURE)) { // Check if we have a Java project.
                continue;
             }
-            prjName = project.getName();
-            analyzePackages(JavaCore.create(project).getPackageFragments());
+            if (!scope.includesProject(project.getName())) {
+               continue;
+            }
+            javaProjects.add(JavaCore.create(project));
+         }
+         long sourceStamp = snapshot == null ? 0 : sourceStamp(javaProjects);
+         metrics.stop(UtilMetrics.Phase.ENUMERATE, enumerateStart);
+         if (snapshot != null) {
+            long publishStart = metrics.start();
+            GModel saved = GModelSnapshot.read(snapshot, sourceStamp, GModelProvider.instance().nextVersion());
+            if (saved != null) {
+               GModelProvider.instance().publish(saved);
+               published = true;
+               metrics.stop(UtilMetrics.Phase.PUBLISH, publishStart);
+               return;
+            }
+         }
+         SubMonitor progress = SubMonitor.convert(monitor, "Analyzing Java projects", javaProjects.size());
+         if (batchParsing) {
+            analyzeProjectsInBatch(javaProjects, progress);
+         } else {
+            for (IJavaProject javaProject : javaProjects) {
+               prjName = javaProject.getElementName();
+               SubMonitor prjProgress = progress.split(1);
+               prjProgress.setTaskName("Analyzing " + prjName);
+               analyzePackages(javaProject.getPackageFragments(), prjProgress);
+            }
+         }
+         long publishStart = metrics.start();
+         for (GCallBuffer calls : callBuffers) {
+            builder.addCalls(calls);
          }
-      } catch (JavaModelException e) {
-         e.printStackTrace();
-      } catch (CoreException e) {
-         e.printStackTrace();
+         GModel model = builder.build();
+         GModelProvider.instance().publish(model);
+         published = true;
+         metrics.stop(UtilMetrics.Phase.PUBLISH, publishStart);
+         metrics.count(UtilMetrics.Counter.NODES_CREATED, model.getNodes().size());
+         metrics.count(UtilMetrics.Counter.EDGES_CREATED, model.getConnections().size());
+         if (index != null && !structureOnly) {
+            // Units outside a narrowed scope keep their entries for when the scope widens again.
+            index.capture(model, parsedUnits, scope.isUnrestricted() ? allUnits : null);
+            index.save();
+         }
+         if (snapshot != null) {
+            try {
+               GModelSnapshot.write(model, sourceStamp, snapshot);
+            } catch (IOException e) {
+               e.printStackTrace();
+            }
+         }
+      } finally {
+         if (published) {
+            // Scores are kept by key, and no method of the new model has an old key.
+            FeatureEnvyAnalyzer.instance().invalidateAll();
+         } else {
+            GSymbolTable.restore(previousSymbols);
+         }
+         // Drop the per-run state so an analyzer kept by a finished job does not pin it.
+         builder = null;
+         allUnits = null;
+         parsedUnits = null;
+         callBuffers = null;
       }
    }
 
-   protected void analyzePackages(IPackageFragment[] packages) throws CoreException, JavaModelException {
+   protected void analyzePackages(IPackageFragment[] packages, SubMonitor progress) throws CoreException, JavaModelException {
       // =============================================================
       // 2nd step: Packages
       // =============================================================
+      progress.setWorkRemaining(packages.length);
       for (IPackageFragment iPackage : packages) {
-         if (iPackage.getKind() == IPackageFragmentRoot.K_SOURCE) {
-            if (iPackage.getCompilationUnits().length < 1) {
-               continue;
-            }
-            pkgName = iPackage.getElementName();
-            analyzeCompilationUnit(iPackage.getCompilationUnits());
+         progress.split(1);
+         List<ICompilationUnit> units = unitsInScope(iPackage);
+         if (units.isEmpty()) {
+            continue;
+         }
+         pkgName = iPackage.getElementName();
+         progress.subTask(pkgName);
+         analyzeCompilationUnit(units);
+      }
+   }
+
+   /**
+    * @return the units of a source package that are in scope, without parsing them.
+    */
+   private List<ICompilationUnit> unitsInScope(IPackageFragment iPackage) throws JavaModelException {
+      if (iPackage.getKind() != IPackageFragmentRoot.K_SOURCE || !scope.includesPackage(iPackage)) {
+         return Collections.emptyList();
+      }
+      List<ICompilationUnit> units = new ArrayList<ICompilationUnit>();
+      for (ICompilationUnit iUnit : iPackage.getCompilationUnits()) {
+         if (scope.includesUnit(iUnit)) {
+            units.add(iUnit);
          }
       }
+      return units;
    }
 
-   private void analyzeCompilationUnit(ICompilationUnit[] iCompilationUnits) throws JavaModelException {
+   private void analyzeCompilationUnit(List<ICompilationUnit> iCompilationUnits) throws JavaModelException {
       // =============================================================
       // 3rd step: ICompilationUnits
       // =============================================================
+      UtilMetrics metrics = UtilMetrics.instance();
+      GCallBuffer calls = new GCallBuffer();
       for (ICompilationUnit iUnit : iCompilationUnits) {
+         if (restoreFromIndex(iUnit)) {
+            continue;
+         }
+         long parseStart = metrics.start();
          CompilationUnit compilationUnit = parse(iUnit);
-         DeclarationVisitor declVisitor = new DeclarationVisitor();
+         metrics.stop(UtilMetrics.Phase.PARSE, parseStart);
+         visit(compilationUnit, calls);
+      }
+      callBuffers.add(calls);
+   }
+
+   /**
+    * @throws CoreException if a project failed; the other workers are stopped, as their model would be partial.
+    */
+   private void analyzeProjectsInBatch(List<IJavaProject> javaProjects, SubMonitor progress) throws CoreException {
+      if (parallelism == 1 || javaProjects.size() < 2) {
+         for (IJavaProject javaProject : javaProjects) {
+            SubMonitor prjProgress = progress.split(1);
+            prjProgress.setTaskName("Analyzing " + javaProject.getElementName());
+            analyzeProjectInBatch(javaProject, prjProgress);
+         }
+         return;
+      }
+      // Fan out one task per project; the parse dominates, the visit is serialized on the model.
+      // Monitors are not thread-safe, so workers only poll for cancellation and progress is
+      // reported here as projects complete.
+      IProgressMonitor cancelOnly = new NullProgressMonitor() {
+         @Override
+         public boolean isCanceled() {
+            return progress.isCanceled();
+         }
+      };
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+         for (IJavaProject javaProject : javaProjects) {
+            tasks.add(pool.submit(() -> {
+               analyzeProjectInBatch(javaProject, cancelOnly);
+               return null;
+            }));
+         }
+         for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).get();
+            progress.split(1).subTask(javaProjects.get(i).getElementName());
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new OperationCanceledException();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof OperationCanceledException) {
+            throw (OperationCanceledException) e.getCause();
+         }
+         if (e.getCause() instanceof CoreException) {
+            throw (CoreException) e.getCause();
+         }
+         throw new CoreException(UtilPlatform.errorStatus("Failed to analyze the Java projects", e.getCause()));
+      } finally {
+         // Let canceled workers finish before the caller releases the builder.
+         pool.shutdownNow();
+         try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private void analyzeProjectInBatch(IJavaProject javaProject, IProgressMonitor monitor) throws JavaModelException {
+      UtilMetrics metrics = UtilMetrics.instance();
+      long enumerateStart = metrics.start();
+      List<ICompilationUnit> units = new ArrayList<ICompilationUnit>();
+      for (IPackageFragment iPackage : javaProject.getPackageFragments()) {
+         for (ICompilationUnit iUnit : unitsInScope(iPackage)) {
+            if (!restoreFromIndex(iUnit)) {
+               units.add(iUnit);
+            }
+         }
+      }
+      metrics.stop(UtilMetrics.Phase.ENUMERATE, enumerateStart);
+      if (units.isEmpty()) {
+         return;
+      }
+      ASTParser parser = newParser();
+      parser.setProject(javaProject);
+      GCallBuffer calls = new GCallBuffer();
+      // The visits run inside createASTs; their time is taken out of the parse time.
+      long[] visitNanos = { 0 };
+      long parseStart = metrics.start();
+      parser.createASTs(units.toArray(new ICompilationUnit[units.size()]), new String[0], new ASTRequestor() {
+         @Override
+         public void acceptAST(ICompilationUnit source, CompilationUnit compilationUnit) {
+            visitNanos[0] += visit(compilationUnit, calls);
+         }
+      }, monitor);
+      if (parseStart != 0) {
+         metrics.record(UtilMetrics.Phase.PARSE, System.nanoTime() - parseStart - visitNanos[0]);
+      }
+      callBuffers.add(calls);
+      if (monitor.isCanceled()) {
+         throw new OperationCanceledException();
+      }
+   }
+
+   /**
+    * Visits a parsed unit into the builder and the call buffer, and records the visit in the metrics.
+    *
+    * @return the nanoseconds spent, or 0 while the metrics are disabled.
+    */
+   private long visit(CompilationUnit compilationUnit, GCallBuffer calls) {
+      UtilMetrics metrics = UtilMetrics.instance();
+      long visitStart = metrics.start();
+      DeclarationVisitor declVisitor = new DeclarationVisitor(builder);
+      synchronized (builder) {
          compilationUnit.accept(declVisitor);
       }
+      CallGraphVisitor callVisitor = new CallGraphVisitor(calls);
+      if (!structureOnly) {
+         compilationUnit.accept(callVisitor);
+      }
+      if (visitStart == 0) {
+         return 0;
+      }
+      long nanos = System.nanoTime() - visitStart;
+      metrics.record(UtilMetrics.Phase.VISIT, nanos);
+      metrics.count(UtilMetrics.Counter.UNITS_PARSED, 1);
+      metrics.count(UtilMetrics.Counter.BINDINGS_RESOLVED, declVisitor.getResolvedBindings() + callVisitor.getResolvedBindings());
+      return nanos;
    }
 
-   private static CompilationUnit parse(ICompilationUnit unit) {
-      ASTParser parser = ASTParser.newParser(AST.JLS10);
-      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+   private boolean restoreFromIndex(ICompilationUnit iUnit) {
+      allUnits.add(iUnit);
+      if (index != null && !structureOnly && index.isFresh(iUnit)) {
+         synchronized (builder) {
+            index.restore(iUnit, builder);
+         }
+         return true;
+      }
+      parsedUnits.add(iUnit);
+      return false;
+   }
+
+   /**
+    * The result of analyzing a single compilation unit on its own. It does not depend on
+    * the current model, so it can be merged again into a newer one.
+    */
+   public static class UnitUpdate {
+      private final String      unitKey;
+      private final GModel      declarations;
+      private final GCallBuffer calls;
+
+      UnitUpdate(String unitKey, GModel declarations, GCallBuffer calls) {
+         this.unitKey = unitKey;
+         this.declarations = declarations;
+         this.calls = calls;
+      }
+
+      /**
+       * Replaces the nodes of the unit in a builder derived from the current model.
+       */
+      public void mergeInto(GModelBuilder builder) {
+         builder.removeUnit(unitKey);
+         if (declarations != null) {
+            builder.addUnit(unitKey, declarations);
+            builder.addCalls(calls);
+         }
+      }
+   }
+
+   /**
+    * Parses and visits a single compilation unit, instead of rescanning the workspace.
+    * A unit that no longer exists or is out of scope yields an update that only removes it.
+    */
+   public UnitUpdate analyzeUnit(ICompilationUnit iUnit) {
+      String unitKey = iUnit.getHandleIdentifier();
+      if (!iUnit.exists() || !isInScope(iUnit)) {
+         return new UnitUpdate(unitKey, null, null);
+      }
+      CompilationUnit compilationUnit = parse(iUnit);
+      GModelBuilder unitBuilder = new GModelBuilder(0);
+      compilationUnit.accept(new DeclarationVisitor(unitBuilder));
+      GCallBuffer calls = new GCallBuffer();
+      if (!structureOnly) {
+         compilationUnit.accept(new CallGraphVisitor(calls));
+      }
+      return new UnitUpdate(unitKey, unitBuilder.build(), calls);
+   }
+
+   /**
+    * Combines the handle identifier and modification stamp of every source unit in scope,
+    * the scope and the parse mode. Reading them from the Java model does not parse anything.
+    */
+   private long sourceStamp(List<IJavaProject> javaProjects) throws JavaModelException {
+      long stamp = (structureOnly ? 19 : 17) * 31 + scope.toString().hashCode();
+      for (IJavaProject javaProject : javaProjects) {
+         for (IPackageFragment iPackage : javaProject.getPackageFragments()) {
+            for (ICompilationUnit iUnit : unitsInScope(iPackage)) {
+               stamp = stamp * 31 + iUnit.getHandleIdentifier().hashCode();
+               stamp = stamp * 31 + DeclarationIndex.stampOf(iUnit);
+            }
+         }
+      }
+      return stamp;
+   }
+
+   private boolean isInScope(ICompilationUnit iUnit) {
+      return scope.includesProject(iUnit.getJavaProject().getElementName()) //
+            && scope.includesPackage((IPackageFragment) iUnit.getParent()) && scope.includesUnit(iUnit);
+   }
+
+   private CompilationUnit parse(ICompilationUnit unit) {
+      ASTParser parser = newParser();
       parser.setSource(unit);
-      parser.setResolveBindings(true);
       return (CompilationUnit) parser.createAST(null); // parse
    }
-}
\ No newline at end of file
+
+   private ASTParser newParser() {
+      ASTParser parser = ASTParser.newParser(AST.JLS10);
+      parser.setKind(ASTParser.K_COMPILATION_UNIT);
+      if (structureOnly) {
+         // Declarations only: nothing below a method signature is visited.
+         parser.setStatementsRecovery(false);
+         parser.setIgnoreMethodBodies(true);
+      } else {
+         parser.setResolveBindings(true);
+      }
+      return parser;
+   }
+}
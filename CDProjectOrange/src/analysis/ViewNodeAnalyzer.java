@@ -21,6 +21,7 @@ import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import graph.model.GClassNode;
 import graph.model.GMethodNode;
+import graph.model.GModelBuilder;
 import graph.provider.GModelProvider;
 import visitor.DeclarationVisitor;
 import visitor.ViewNodeVisitor;
@@ -31,9 +32,10 @@ public class ViewNodeAnalyzer {
 private String packageName;
 private String className;
 private String methodName;
+   private GModelBuilder builder;
 
    public void analyze() {
-      GModelProvider.instance().reset();
+      builder = GModelProvider.instance().newBuilder();
 
       // =============================================================
       // 1st step: Project
@@ -52,6 +54,7 @@ private String methodName;
       } catch (CoreException e) {
          e.printStackTrace();
       }
+      GModelProvider.instance().publish(builder.build());
    }
 
    protected void analyzePackages(IPackageFragment[] packages) throws CoreException, JavaModelException {
@@ -77,7 +80,7 @@ private String methodName;
       // =============================================================
       for (ICompilationUnit iUnit : iCompilationUnits) {
          CompilationUnit compilationUnit = parse(iUnit);
-         ViewNodeVisitor viewNodeVisitor = new ViewNodeVisitor();
+         ViewNodeVisitor viewNodeVisitor = new ViewNodeVisitor(builder);
          viewNodeVisitor.setClass(className);
          viewNodeVisitor.setMethod(methodName);
          compilationUnit.accept(viewNodeVisitor);
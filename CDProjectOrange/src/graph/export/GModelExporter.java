@@ -0,0 +1,334 @@
+/*
+ * @(#) GModelExporter.java
+ *
+ */
+package graph.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import graph.model.GClassNode;
+import graph.model.GConnection;
+import graph.model.GMethodNode;
+import graph.model.GModel;
+import graph.model.GNode;
+import graph.model.GPackageNode;
+
+/**
+ * Streams a model to GraphML, DOT or newline-delimited JSON for external graph tools.
+ * Nodes and connections are written one at a time through a fixed-size buffer into a
+ * channel, so the heap used does not grow with the size of the graph. Connections are
+ * read from the model's adjacency arrays without creating GConnection objects.
+ * <p>
+ * Every node has an id, a kind (package, class, method or variable), a name and the
+ * id of its parent. Every connection has a kind (contains or calls) and its label.
+ */
+public class GModelExporter {
+   private static final int CHAR_BUFFER_SIZE = 32 * 1024;
+   private static final int BYTE_BUFFER_SIZE = 128 * 1024;
+
+   public enum Format {
+      GRAPHML, DOT, NDJSON;
+
+      /**
+       * @return the format for the file name's extension, or null if there is none.
+       */
+      public static Format forFile(String fileName) {
+         String name = fileName.toLowerCase();
+         if (name.endsWith(".graphml")) {
+            return GRAPHML;
+         }
+         if (name.endsWith(".dot") || name.endsWith(".gv")) {
+            return DOT;
+         }
+         if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+         }
+         return null;
+      }
+   }
+
+   private final GModel model;
+
+   public GModelExporter(GModel model) {
+      this.model = model;
+   }
+
+   /**
+    * Writes the model to the file, replacing it if it exists.
+    *
+    * @return the number of connections written.
+    */
+   public int export(Path out, Format format) throws IOException {
+      try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, //
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+         return export(channel, format);
+      }
+   }
+
+   /**
+    * Writes the model to the channel, which is left open.
+    *
+    * @return the number of connections written.
+    */
+   public int export(WritableByteChannel channel, Format format) throws IOException {
+      ChannelWriter w = new ChannelWriter(channel);
+      header(w, format);
+      for (GNode n : model.getNodes()) {
+         node(w, format, n);
+         w.flushIfFull();
+      }
+      int edges = 0;
+      for (GNode n : model.getNodes()) {
+         for (int i = 0, degree = model.getOutDegree(n); i < degree; i++) {
+            edge(w, format, edges++, n, i);
+            w.flushIfFull();
+         }
+      }
+      footer(w, format);
+      w.flush();
+      return edges;
+   }
+
+   private static void header(ChannelWriter w, Format format) {
+      switch (format) {
+      case GRAPHML:
+         w.sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n") //
+               .append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n") //
+               .append("  <key id=\"kind\" for=\"node\" attr.name=\"kind\" attr.type=\"string\"/>\n") //
+               .append("  <key id=\"name\" for=\"node\" attr.name=\"name\" attr.type=\"string\"/>\n") //
+               .append("  <key id=\"parent\" for=\"node\" attr.name=\"parent\" attr.type=\"string\"/>\n") //
+               .append("  <key id=\"ekind\" for=\"edge\" attr.name=\"kind\" attr.type=\"string\"/>\n") //
+               .append("  <key id=\"label\" for=\"edge\" attr.name=\"label\" attr.type=\"string\"/>\n") //
+               .append("  <graph id=\"G\" edgedefault=\"directed\">\n");
+         break;
+      case DOT:
+         w.sb.append("digraph G {\n");
+         break;
+      default:
+         break;
+      }
+   }
+
+   private static void footer(ChannelWriter w, Format format) {
+      switch (format) {
+      case GRAPHML:
+         w.sb.append("  </graph>\n</graphml>\n");
+         break;
+      case DOT:
+         w.sb.append("}\n");
+         break;
+      default:
+         break;
+      }
+   }
+
+   private static void node(ChannelWriter w, Format format, GNode n) {
+      String parent = n.getParent() == null ? "" : n.getParent();
+      switch (format) {
+      case GRAPHML:
+         w.sb.append("    <node id=\"");
+         xml(w.sb, n.getId());
+         w.sb.append("\"><data key=\"kind\">").append(kindOf(n)).append("</data><data key=\"name\">");
+         xml(w.sb, n.getName());
+         w.sb.append("</data><data key=\"parent\">");
+         xml(w.sb, parent);
+         w.sb.append("</data></node>\n");
+         break;
+      case DOT:
+         w.sb.append("  \"");
+         dot(w.sb, n.getId());
+         w.sb.append("\" [label=\"");
+         dot(w.sb, n.getName());
+         w.sb.append("\", kind=").append(kindOf(n)).append("];\n");
+         break;
+      case NDJSON:
+         w.sb.append("{\"type\":\"node\",\"id\":\"");
+         json(w.sb, n.getId());
+         w.sb.append("\",\"kind\":\"").append(kindOf(n)).append("\",\"name\":\"");
+         json(w.sb, n.getName());
+         w.sb.append("\",\"parent\":\"");
+         json(w.sb, parent);
+         w.sb.append("\"}\n");
+         break;
+      }
+   }
+
+   private void edge(ChannelWriter w, Format format, int edge, GNode src, int i) {
+      GNode dst = model.getConnectedTo(src, i);
+      String kind = model.getConnectionKind(src, i) == GConnection.CALLS ? "calls" : "contains";
+      switch (format) {
+      case GRAPHML:
+         w.sb.append("    <edge id=\"e").append(edge).append("\" source=\"");
+         xml(w.sb, src.getId());
+         w.sb.append("\" target=\"");
+         xml(w.sb, dst.getId());
+         w.sb.append("\"><data key=\"ekind\">").append(kind).append("</data><data key=\"label\">");
+         label(w.sb, src, i, dst, format);
+         w.sb.append("</data></edge>\n");
+         break;
+      case DOT:
+         w.sb.append("  \"");
+         dot(w.sb, src.getId());
+         w.sb.append("\" -> \"");
+         dot(w.sb, dst.getId());
+         w.sb.append("\" [kind=").append(kind).append(", label=\"");
+         label(w.sb, src, i, dst, format);
+         w.sb.append("\"];\n");
+         break;
+      case NDJSON:
+         w.sb.append("{\"type\":\"edge\",\"source\":\"");
+         json(w.sb, src.getId());
+         w.sb.append("\",\"target\":\"");
+         json(w.sb, dst.getId());
+         w.sb.append("\",\"kind\":\"").append(kind).append("\",\"label\":\"");
+         label(w.sb, src, i, dst, format);
+         w.sb.append("\"}\n");
+         break;
+      }
+   }
+
+   /**
+    * Appends the escaped connection label as the model formats it, building a string only for custom labels.
+    */
+   private void label(StringBuilder sb, GNode src, int i, GNode dst, Format format) {
+      int offset = model.getConnectionOffset(src, i);
+      if (offset >= 0) {
+         sb.append(model.getConnectionKind(src, i) == GConnection.CALLS ? "call: " : "offset: ").append(offset);
+         return;
+      }
+      String label = model.getConnectionLabel(src.getKey(), dst.getKey());
+      switch (format) {
+      case GRAPHML:
+         xml(sb, label);
+         break;
+      case DOT:
+         dot(sb, label);
+         break;
+      case NDJSON:
+         json(sb, label);
+         break;
+      }
+   }
+
+   private static String kindOf(GNode n) {
+      if (n instanceof GPackageNode) {
+         return "package";
+      }
+      if (n instanceof GClassNode) {
+         return "class";
+      }
+      return (n instanceof GMethodNode) ? "method" : "variable";
+   }
+
+   private static void xml(StringBuilder sb, String s) {
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         switch (c) {
+         case '&':
+            sb.append("&amp;");
+            break;
+         case '<':
+            sb.append("&lt;");
+            break;
+         case '>':
+            sb.append("&gt;");
+            break;
+         case '"':
+            sb.append("&quot;");
+            break;
+         default:
+            sb.append(c);
+         }
+      }
+   }
+
+   private static void dot(StringBuilder sb, String s) {
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         if (c == '"' || c == '\\') {
+            sb.append('\\');
+         }
+         sb.append(c == '\n' ? ' ' : c);
+      }
+   }
+
+   private static void json(StringBuilder sb, String s) {
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         if (c == '"' || c == '\\') {
+            sb.append('\\').append(c);
+         } else if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+         } else {
+            sb.append(c);
+         }
+      }
+   }
+
+   /**
+    * Collects text in a bounded StringBuilder and encodes it to UTF-8 into a reused buffer
+    * whenever it fills up.
+    */
+   private static class ChannelWriter {
+      final StringBuilder          sb      = new StringBuilder(CHAR_BUFFER_SIZE + 1024);
+      private final WritableByteChannel channel;
+      private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+      private final ByteBuffer     bytes   = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+      private char[]               array   = new char[CHAR_BUFFER_SIZE + 1024];
+
+      ChannelWriter(WritableByteChannel channel) {
+         this.channel = channel;
+      }
+
+      void flushIfFull() throws IOException {
+         if (sb.length() >= CHAR_BUFFER_SIZE) {
+            encode(false);
+         }
+      }
+
+      void flush() throws IOException {
+         encode(true);
+         encoder.flush(bytes);
+         drain();
+      }
+
+      private void encode(boolean endOfInput) throws IOException {
+         // The encoder is much faster on an array than on a CharSequence.
+         if (array.length < sb.length()) {
+            array = new char[sb.length()];
+         }
+         sb.getChars(0, sb.length(), array, 0);
+         CharBuffer chars = CharBuffer.wrap(array, 0, sb.length());
+         while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+               drain();
+            } else if (result.isUnderflow()) {
+               break;
+            } else {
+               result.throwException();
+            }
+         }
+         // A high surrogate at the end stays behind until its pair is appended.
+         sb.delete(0, sb.length() - chars.remaining());
+         drain();
+      }
+
+      private void drain() throws IOException {
+         bytes.flip();
+         while (bytes.hasRemaining()) {
+            channel.write(bytes);
+         }
+         bytes.clear();
+      }
+   }
+}
@@ -0,0 +1,54 @@
+/*
+ * @(#) GFixedLayoutAlgorithm.java
+ *
+ */
+package graph.layout;
+
+import org.eclipse.zest.layouts.LayoutStyles;
+import org.eclipse.zest.layouts.algorithms.AbstractLayoutAlgorithm;
+import org.eclipse.zest.layouts.dataStructures.InternalNode;
+import org.eclipse.zest.layouts.dataStructures.InternalRelationship;
+
+/**
+ * Leaves every node where it is. The viewer uses it when positions come from a
+ * GLayoutJob, so the relayout Zest runs on a new input does not move the nodes again.
+ */
+public class GFixedLayoutAlgorithm extends AbstractLayoutAlgorithm {
+
+   public GFixedLayoutAlgorithm() {
+      super(LayoutStyles.NO_LAYOUT_NODE_RESIZING);
+   }
+
+   @Override
+   protected void applyLayoutInternal(InternalNode[] entitiesToLayout, InternalRelationship[] relationshipsToConsider, //
+         double boundsX, double boundsY, double boundsWidth, double boundsHeight) {
+   }
+
+   @Override
+   protected void preLayoutAlgorithm(InternalNode[] entitiesToLayout, InternalRelationship[] relationshipsToConsider, //
+         double x, double y, double width, double height) {
+   }
+
+   @Override
+   protected void postLayoutAlgorithm(InternalNode[] entitiesToLayout, InternalRelationship[] relationshipsToConsider) {
+   }
+
+   @Override
+   protected int getTotalNumberOfLayoutSteps() {
+      return 0;
+   }
+
+   @Override
+   protected int getCurrentLayoutStep() {
+      return 0;
+   }
+
+   @Override
+   public void setLayoutArea(double x, double y, double width, double height) {
+   }
+
+   @Override
+   protected boolean isValidConfiguration(boolean asynchronous, boolean continuous) {
+      return true;
+   }
+}
@@ -0,0 +1,394 @@
+/*
+ * @(#) GForceLayout.java
+ *
+ */
+package graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A force-directed layout for large graphs. Springs pull connected nodes together and
+ * every pair of nodes repels; the repulsion is approximated with a Barnes-Hut quadtree,
+ * so an iteration costs O(n log n) instead of O(n^2). Coordinates, forces and the
+ * quadtree live in primitive arrays, and the repulsion of each iteration is computed
+ * on several threads.
+ * <p>
+ * Positions are cached by node id. A layout seeds known nodes from the cache and new
+ * nodes next to their parent, and runs fewer iterations when most nodes are known.
+ * <p>
+ * Not thread-safe; layout jobs share a scheduling rule so one runs at a time.
+ */
+public class GForceLayout implements GLayoutEngine {
+   private static final double IDEAL_LENGTH = 80;
+   private static final double GRAVITY      = 0.1;
+   private static final double MIN_HALF     = 1e-3;
+   private static final double MIN_DIST2    = 1e-6;
+   private static final int    MIN_CHUNK    = 256;
+
+   private static final int    EMPTY        = -1;
+   private static final int    INTERNAL     = -2;
+
+   private int    iterations  = 100;
+   private int    parallelism = Runtime.getRuntime().availableProcessors();
+   private double theta       = 0.8;
+
+   private Map<String, double[]> centers = new HashMap<String, double[]>();
+   private int recomputed = 0;
+   private final Random random = new Random(42);
+
+   // Quadtree; cell i has its children at child[4 * i .. 4 * i + 3].
+   private int      cellCount;
+   private int[]    child    = new int[0];
+   private int[]    body     = new int[0];
+   private double[] mass     = new double[0];
+   private double[] comX     = new double[0];
+   private double[] comY     = new double[0];
+   private double[] cellX    = new double[0];
+   private double[] cellY    = new double[0];
+   private double[] half     = new double[0];
+
+   public GForceLayout setIterations(int iterations) {
+      this.iterations = Math.max(1, iterations);
+      return this;
+   }
+
+   public int getIterations() {
+      return iterations;
+   }
+
+   /**
+    * Number of threads computing the repulsion. 1 keeps the layout serial.
+    */
+   public GForceLayout setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+      return this;
+   }
+
+   /**
+    * Barnes-Hut opening angle. 0 computes the exact repulsion; larger values are faster and coarser.
+    */
+   public GForceLayout setTheta(double theta) {
+      this.theta = theta;
+      return this;
+   }
+
+   @Override
+   public Map<String, double[]> layout(GLayoutModel m, boolean radial) {
+      int n = m.size();
+      double[] x = new double[n], y = new double[n];
+      boolean[] placed = new boolean[n];
+      recomputed = 0;
+      for (int i = 0; i < n; i++) {
+         double[] c = centers.get(m.getId(i));
+         if (c != null) {
+            x[i] = c[0];
+            y[i] = c[1];
+            placed[i] = true;
+         }
+      }
+      for (int root : m.getRoots()) {
+         seed(m, root, x, y, placed);
+      }
+
+      int edgeCount = 0;
+      for (int i = 0; i < n; i++) {
+         if (m.getParent(i) >= 0) {
+            edgeCount++;
+         }
+      }
+      int[] src = new int[edgeCount], dst = new int[edgeCount];
+      for (int i = 0, e = 0; i < n; i++) {
+         if (m.getParent(i) >= 0) {
+            src[e] = m.getParent(i);
+            dst[e++] = i;
+         }
+      }
+      // A warm start only needs to settle the new nodes.
+      double fresh = n == 0 ? 1 : Math.max(0.1, (double) recomputed / n);
+      run(x, y, src, dst, (int) Math.ceil(iterations * fresh), fresh);
+
+      Map<String, double[]> next = new HashMap<String, double[]>(n * 2);
+      Map<String, double[]> positions = new HashMap<String, double[]>(n * 2);
+      double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+      for (int i = 0; i < n; i++) {
+         next.put(m.getId(i), new double[] { x[i], y[i] });
+         minX = Math.min(minX, x[i] - m.getWidth(i) / 2);
+         minY = Math.min(minY, y[i] - m.getHeight(i) / 2);
+      }
+      for (int i = 0; i < n; i++) {
+         positions.put(m.getId(i), new double[] { x[i] - m.getWidth(i) / 2 - minX, y[i] - m.getHeight(i) / 2 - minY });
+      }
+      centers = next;
+      return positions;
+   }
+
+   @Override
+   public int getRecomputed() {
+      return recomputed;
+   }
+
+   public void clear() {
+      centers.clear();
+   }
+
+   private void seed(GLayoutModel m, int node, double[] x, double[] y, boolean[] placed) {
+      if (!placed[node]) {
+         int parent = m.getParent(node);
+         double px = parent >= 0 ? x[parent] : 0, py = parent >= 0 ? y[parent] : 0;
+         double spread = parent >= 0 ? IDEAL_LENGTH : IDEAL_LENGTH * Math.sqrt(m.size());
+         x[node] = px + (random.nextDouble() - 0.5) * spread;
+         y[node] = py + (random.nextDouble() - 0.5) * spread;
+         placed[node] = true;
+         recomputed++;
+      }
+      for (int c : m.getChildren(node)) {
+         seed(m, c, x, y, placed);
+      }
+   }
+
+   /**
+    * Runs the simulation in place on node centers.
+    *
+    * @param src the source node per edge.
+    * @param dst the destination node per edge.
+    * @param heat the initial step size as a fraction of a cold start, in (0, 1].
+    */
+   public void run(double[] x, double[] y, int[] src, int[] dst, int steps, double heat) {
+      int n = x.length;
+      if (n < 2) {
+         return;
+      }
+      double[] fx = new double[n], fy = new double[n];
+      double temperature = heat * IDEAL_LENGTH * Math.sqrt(n) / 2;
+      double cooling = Math.pow(0.01, 1.0 / steps);
+      ForkJoinPool pool = parallelism > 1 && n >= 2 * MIN_CHUNK ? new ForkJoinPool(parallelism) : null;
+      try {
+         for (int step = 0; step < steps; step++) {
+            buildTree(x, y);
+            repulse(x, y, fx, fy, pool);
+            attract(x, y, fx, fy, src, dst);
+            move(x, y, fx, fy, temperature);
+            temperature *= cooling;
+         }
+      } finally {
+         if (pool != null) {
+            pool.shutdownNow();
+            try {
+               pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      }
+   }
+
+   private void repulse(double[] x, double[] y, double[] fx, double[] fy, ForkJoinPool pool) {
+      int n = x.length;
+      if (pool == null) {
+         repulse(x, y, fx, fy, 0, n);
+         return;
+      }
+      int chunk = Math.max(MIN_CHUNK, n / (parallelism * 4));
+      List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+      for (int from = 0; from < n; from += chunk) {
+         final int lo = from, hi = Math.min(n, from + chunk);
+         tasks.add(pool.submit(() -> repulse(x, y, fx, fy, lo, hi)));
+      }
+      try {
+         for (ForkJoinTask<?> task : tasks) {
+            task.get();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Sets the repulsion on nodes [from, to) from the quadtree. Reads the tree only.
+    */
+   private void repulse(double[] x, double[] y, double[] fx, double[] fy, int from, int to) {
+      double k2 = IDEAL_LENGTH * IDEAL_LENGTH;
+      double theta2 = theta * theta;
+      int[] stack = new int[64];
+      for (int i = from; i < to; i++) {
+         double sumX = 0, sumY = 0;
+         int top = 0;
+         stack[top++] = 0;
+         while (top > 0) {
+            int cell = stack[--top];
+            double dx = x[i] - comX[cell], dy = y[i] - comY[cell];
+            double d2 = dx * dx + dy * dy;
+            double size = 2 * half[cell];
+            if (body[cell] >= 0 || size * size < theta2 * d2) {
+               if (d2 > MIN_DIST2) {
+                  double f = mass[cell] * k2 / d2;
+                  sumX += dx * f;
+                  sumY += dy * f;
+               }
+               continue;
+            }
+            for (int q = 0; q < 4; q++) {
+               int c = child[4 * cell + q];
+               if (c != EMPTY) {
+                  if (top == stack.length) {
+                     stack = Arrays.copyOf(stack, top * 2);
+                  }
+                  stack[top++] = c;
+               }
+            }
+         }
+         fx[i] = sumX;
+         fy[i] = sumY;
+      }
+   }
+
+   private static void attract(double[] x, double[] y, double[] fx, double[] fy, int[] src, int[] dst) {
+      for (int e = 0; e < src.length; e++) {
+         int s = src[e], d = dst[e];
+         double dx = x[d] - x[s], dy = y[d] - y[s];
+         double dist = Math.sqrt(dx * dx + dy * dy);
+         double f = dist / IDEAL_LENGTH;
+         fx[s] += dx * f;
+         fy[s] += dy * f;
+         fx[d] -= dx * f;
+         fy[d] -= dy * f;
+      }
+   }
+
+   /**
+    * Moves every node along its force, plus a weak pull to the centroid that keeps
+    * unconnected parts together, by at most the temperature.
+    */
+   private static void move(double[] x, double[] y, double[] fx, double[] fy, double temperature) {
+      int n = x.length;
+      double cx = 0, cy = 0;
+      for (int i = 0; i < n; i++) {
+         cx += x[i];
+         cy += y[i];
+      }
+      cx /= n;
+      cy /= n;
+      for (int i = 0; i < n; i++) {
+         double gx = fx[i] - GRAVITY * (x[i] - cx);
+         double gy = fy[i] - GRAVITY * (y[i] - cy);
+         double len = Math.sqrt(gx * gx + gy * gy);
+         if (len > 0) {
+            double step = Math.min(len, temperature) / len;
+            x[i] += gx * step;
+            y[i] += gy * step;
+         }
+      }
+   }
+
+   // =============================================================
+   // Barnes-Hut quadtree
+   // =============================================================
+
+   private void buildTree(double[] x, double[] y) {
+      double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+      for (int i = 0; i < x.length; i++) {
+         minX = Math.min(minX, x[i]);
+         minY = Math.min(minY, y[i]);
+         maxX = Math.max(maxX, x[i]);
+         maxY = Math.max(maxY, y[i]);
+      }
+      ensureCapacity(2 * x.length + 1);
+      cellCount = 0;
+      newCell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1);
+      for (int i = 0; i < x.length; i++) {
+         insert(i, x[i], y[i]);
+      }
+      for (int c = 0; c < cellCount; c++) {
+         comX[c] /= mass[c];
+         comY[c] /= mass[c];
+      }
+   }
+
+   /**
+    * Adds a body; comX and comY hold position sums until the tree is complete.
+    */
+   private void insert(int i, double bx, double by) {
+      int cell = 0;
+      while (true) {
+         if (body[cell] == EMPTY) {
+            body[cell] = i;
+            mass[cell] = 1;
+            comX[cell] = bx;
+            comY[cell] = by;
+            return;
+         }
+         if (body[cell] >= 0) {
+            if (half[cell] < MIN_HALF) {
+               // Coincident bodies share a leaf.
+               mass[cell] += 1;
+               comX[cell] += bx;
+               comY[cell] += by;
+               return;
+            }
+            int b = body[cell];
+            double ox = comX[cell] / mass[cell], oy = comY[cell] / mass[cell];
+            int c = childCell(cell, ox, oy);
+            body[c] = b;
+            mass[c] = mass[cell];
+            comX[c] = comX[cell];
+            comY[c] = comY[cell];
+            body[cell] = INTERNAL;
+         }
+         mass[cell] += 1;
+         comX[cell] += bx;
+         comY[cell] += by;
+         cell = childCell(cell, bx, by);
+      }
+   }
+
+   private int childCell(int cell, double bx, double by) {
+      int q = (bx >= cellX[cell] ? 1 : 0) + (by >= cellY[cell] ? 2 : 0);
+      int c = child[4 * cell + q];
+      if (c == EMPTY) {
+         double h = half[cell] / 2;
+         c = newCell(cellX[cell] + ((q & 1) != 0 ? h : -h), cellY[cell] + ((q & 2) != 0 ? h : -h), h);
+         child[4 * cell + q] = c;
+      }
+      return c;
+   }
+
+   private int newCell(double cx, double cy, double h) {
+      if (cellCount == body.length) {
+         ensureCapacity(cellCount * 2);
+      }
+      int c = cellCount++;
+      child[4 * c] = child[4 * c + 1] = child[4 * c + 2] = child[4 * c + 3] = EMPTY;
+      body[c] = EMPTY;
+      mass[c] = 0;
+      comX[c] = comY[c] = 0;
+      cellX[c] = cx;
+      cellY[c] = cy;
+      half[c] = h;
+      return c;
+   }
+
+   private void ensureCapacity(int cells) {
+      if (body.length >= cells) {
+         return;
+      }
+      child = Arrays.copyOf(child, 4 * cells);
+      body = Arrays.copyOf(body, cells);
+      mass = Arrays.copyOf(mass, cells);
+      comX = Arrays.copyOf(comX, cells);
+      comY = Arrays.copyOf(comY, cells);
+      cellX = Arrays.copyOf(cellX, cells);
+      cellY = Arrays.copyOf(cellY, cells);
+      half = Arrays.copyOf(half, cells);
+   }
+}
@@ -0,0 +1,108 @@
+/*
+ * @(#) GForceLayoutAlgorithm.java
+ *
+ */
+package graph.layout;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.zest.layouts.LayoutStyles;
+import org.eclipse.zest.layouts.algorithms.AbstractLayoutAlgorithm;
+import org.eclipse.zest.layouts.dataStructures.InternalNode;
+import org.eclipse.zest.layouts.dataStructures.InternalRelationship;
+
+/**
+ * Runs GForceLayout as a Zest layout algorithm, for use with GraphViewer.setLayoutAlgorithm.
+ * Nodes start from their current locations and the result is scaled into the layout bounds.
+ * The view itself runs the engine in a GLayoutJob instead, to keep it off the UI thread.
+ */
+public class GForceLayoutAlgorithm extends AbstractLayoutAlgorithm {
+   private final GForceLayout engine;
+   private int step = 0, steps = 0;
+
+   public GForceLayoutAlgorithm() {
+      this(new GForceLayout());
+   }
+
+   public GForceLayoutAlgorithm(GForceLayout engine) {
+      super(LayoutStyles.NO_LAYOUT_NODE_RESIZING);
+      this.engine = engine;
+   }
+
+   @Override
+   protected void applyLayoutInternal(InternalNode[] entitiesToLayout, InternalRelationship[] relationshipsToConsider, //
+         double boundsX, double boundsY, double boundsWidth, double boundsHeight) {
+      int n = entitiesToLayout.length;
+      double[] x = new double[n], y = new double[n];
+      Map<InternalNode, Integer> indexOf = new IdentityHashMap<InternalNode, Integer>(n * 2);
+      for (int i = 0; i < n; i++) {
+         InternalNode node = entitiesToLayout[i];
+         indexOf.put(node, i);
+         x[i] = node.getInternalX() + node.getInternalWidth() / 2;
+         y[i] = node.getInternalY() + node.getInternalHeight() / 2;
+      }
+      int[] src = new int[relationshipsToConsider.length], dst = new int[relationshipsToConsider.length];
+      int edges = 0;
+      for (InternalRelationship rel : relationshipsToConsider) {
+         Integer s = indexOf.get(rel.getSource()), d = indexOf.get(rel.getDestination());
+         if (s != null && d != null && !s.equals(d)) {
+            src[edges] = s;
+            dst[edges++] = d;
+         }
+      }
+      steps = 1;
+      engine.run(x, y, Arrays.copyOf(src, edges), Arrays.copyOf(dst, edges), engine.getIterations(), 1);
+      step = 1;
+      fitWithinBounds(entitiesToLayout, x, y, boundsX, boundsY, boundsWidth, boundsHeight);
+   }
+
+   private static void fitWithinBounds(InternalNode[] nodes, double[] x, double[] y, //
+         double boundsX, double boundsY, double boundsWidth, double boundsHeight) {
+      double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+      double maxW = 0, maxH = 0;
+      for (int i = 0; i < nodes.length; i++) {
+         minX = Math.min(minX, x[i]);
+         minY = Math.min(minY, y[i]);
+         maxX = Math.max(maxX, x[i]);
+         maxY = Math.max(maxY, y[i]);
+         maxW = Math.max(maxW, nodes[i].getInternalWidth());
+         maxH = Math.max(maxH, nodes[i].getInternalHeight());
+      }
+      double scaleX = (boundsWidth - maxW) / Math.max(maxX - minX, 1);
+      double scaleY = (boundsHeight - maxH) / Math.max(maxY - minY, 1);
+      for (int i = 0; i < nodes.length; i++) {
+         nodes[i].setInternalLocation(boundsX + (x[i] - minX) * scaleX, boundsY + (y[i] - minY) * scaleY);
+      }
+   }
+
+   @Override
+   protected void preLayoutAlgorithm(InternalNode[] entitiesToLayout, InternalRelationship[] relationshipsToConsider, //
+         double x, double y, double width, double height) {
+      step = 0;
+   }
+
+   @Override
+   protected void postLayoutAlgorithm(InternalNode[] entitiesToLayout, InternalRelationship[] relationshipsToConsider) {
+   }
+
+   @Override
+   protected int getTotalNumberOfLayoutSteps() {
+      return steps;
+   }
+
+   @Override
+   protected int getCurrentLayoutStep() {
+      return step;
+   }
+
+   @Override
+   public void setLayoutArea(double x, double y, double width, double height) {
+   }
+
+   @Override
+   protected boolean isValidConfiguration(boolean asynchronous, boolean continuous) {
+      return !continuous;
+   }
+}
@@ -0,0 +1,23 @@
+/*
+ * @(#) GLayoutEngine.java
+ *
+ */
+package graph.layout;
+
+import java.util.Map;
+
+/**
+ * Computes node positions for a GLayoutModel off the UI thread.
+ */
+public interface GLayoutEngine {
+   /**
+    * @param radial requests the radial form of the layout; ignored by engines without one.
+    * @return the top-left location per node id.
+    */
+   Map<String, double[]> layout(GLayoutModel m, boolean radial);
+
+   /**
+    * The number of nodes placed from scratch by the last layout, as opposed to taken from the cache.
+    */
+   int getRecomputed();
+}
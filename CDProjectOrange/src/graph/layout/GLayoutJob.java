@@ -0,0 +1,74 @@
+/*
+ * @(#) GLayoutJob.java
+ *
+ */
+package graph.layout;
+
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import util.UtilMetrics;
+
+/**
+ * Computes node positions off the UI thread. Layout jobs share a scheduling rule,
+ * so the cache of a shared GLayoutEngine is used by one job at a time.
+ */
+public class GLayoutJob extends Job {
+   private static final ISchedulingRule LAYOUT_RULE = new ISchedulingRule() {
+      @Override
+      public boolean contains(ISchedulingRule rule) {
+         return rule == this;
+      }
+
+      @Override
+      public boolean isConflicting(ISchedulingRule rule) {
+         return rule == this;
+      }
+   };
+
+   private final GLayoutModel           model;
+   private final GLayoutEngine          engine;
+   private final boolean                radial;
+   private final Runnable               onDone;
+   private volatile Map<String, double[]> positions = null;
+
+   /**
+    * @param onDone called on the job thread once the positions are available.
+    */
+   public GLayoutJob(GLayoutModel model, GLayoutEngine engine, boolean radial, Runnable onDone) {
+      super("Laying out graph");
+      this.model = model;
+      this.engine = engine;
+      this.radial = radial;
+      this.onDone = onDone;
+      setSystem(true);
+      setRule(LAYOUT_RULE);
+   }
+
+   @Override
+   protected IStatus run(IProgressMonitor monitor) {
+      if (monitor.isCanceled()) {
+         return Status.CANCEL_STATUS;
+      }
+      long start = UtilMetrics.instance().start();
+      positions = engine.layout(model, radial);
+      UtilMetrics.instance().stop(UtilMetrics.Phase.LAYOUT, start);
+      if (monitor.isCanceled()) {
+         return Status.CANCEL_STATUS;
+      }
+      onDone.run();
+      return Status.OK_STATUS;
+   }
+
+   /**
+    * The top-left location per node id, or null until the job has run.
+    */
+   public Map<String, double[]> getPositions() {
+      return positions;
+   }
+}
@@ -0,0 +1,94 @@
+/*
+ * @(#) GLayoutModel.java
+ *
+ */
+package graph.layout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lightweight copy of the visible graph for layout off the UI thread: node ids,
+ * parent links and figure sizes only, with no reference to SWT or Zest objects.
+ */
+public final class GLayoutModel {
+   private final String[]  ids;
+   private final int[]     parents;
+   private final double[]  widths;
+   private final double[]  heights;
+   private final int[][]   children;
+   private final int[]     roots;
+
+   /**
+    * @param parentIds the parent id per node; a node whose parent is not in the list is a root.
+    */
+   public GLayoutModel(List<String> ids, List<String> parentIds, double[] widths, double[] heights) {
+      int size = ids.size();
+      this.ids = ids.toArray(new String[size]);
+      this.widths = widths;
+      this.heights = heights;
+      this.parents = new int[size];
+
+      Map<String, Integer> indexOf = new HashMap<String, Integer>(size * 2);
+      for (int i = 0; i < size; i++) {
+         indexOf.put(this.ids[i], i);
+      }
+      List<List<Integer>> childLists = new ArrayList<List<Integer>>(size);
+      List<Integer> rootList = new ArrayList<Integer>();
+      for (int i = 0; i < size; i++) {
+         childLists.add(new ArrayList<Integer>());
+      }
+      for (int i = 0; i < size; i++) {
+         Integer parent = parentIds.get(i) == null ? null : indexOf.get(parentIds.get(i));
+         parents[i] = (parent == null || parent == i) ? -1 : parent;
+         if (parents[i] < 0) {
+            rootList.add(i);
+         } else {
+            childLists.get(parents[i]).add(i);
+         }
+      }
+      this.children = new int[size][];
+      for (int i = 0; i < size; i++) {
+         children[i] = toArray(childLists.get(i));
+      }
+      this.roots = toArray(rootList);
+   }
+
+   private static int[] toArray(List<Integer> list) {
+      int[] a = new int[list.size()];
+      for (int i = 0; i < a.length; i++) {
+         a[i] = list.get(i);
+      }
+      return a;
+   }
+
+   public int size() {
+      return ids.length;
+   }
+
+   public String getId(int node) {
+      return ids[node];
+   }
+
+   public int getParent(int node) {
+      return parents[node];
+   }
+
+   public int[] getChildren(int node) {
+      return children[node];
+   }
+
+   public int[] getRoots() {
+      return roots;
+   }
+
+   public double getWidth(int node) {
+      return widths[node];
+   }
+
+   public double getHeight(int node) {
+      return heights[node];
+   }
+}
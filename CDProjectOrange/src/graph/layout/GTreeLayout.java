@@ -0,0 +1,153 @@
+/*
+ * @(#) GTreeLayout.java
+ *
+ */
+package graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes tree and radial positions on a GLayoutModel and caches them per root
+ * subtree, keyed by the root's node id. A subtree whose nodes and sizes did not change
+ * keeps its positions and is only shifted, so a refresh that touches a few nodes
+ * relayouts just the subtrees containing them.
+ * <p>
+ * Not thread-safe; layout jobs share a scheduling rule so one runs at a time.
+ */
+public class GTreeLayout implements GLayoutEngine {
+   private static final double H_GAP       = 20;
+   private static final double V_SPACING   = 80;
+   private static final double ROOT_GAP    = 60;
+   private static final double MARGIN      = 20;
+
+   private Map<String, Subtree> subtrees = new HashMap<String, Subtree>();
+   private int recomputed = 0;
+
+   /** Positions of one root subtree, relative to the subtree's left edge. */
+   private static class Subtree {
+      String[] ids;
+      double[] sizes;
+      double[] centerX, depth;
+      double   width;
+   }
+
+   @Override
+   public Map<String, double[]> layout(GLayoutModel m, boolean radial) {
+      Map<String, Subtree> next = new HashMap<String, Subtree>();
+      Map<String, double[]> centers = new HashMap<String, double[]>(m.size() * 2);
+      recomputed = 0;
+      double offset = 0;
+      int maxDepth = 0;
+      for (int root : m.getRoots()) {
+         List<Integer> members = new ArrayList<Integer>();
+         collect(m, root, members);
+         String[] ids = new String[members.size()];
+         double[] sizes = new double[members.size() * 2];
+         for (int i = 0; i < ids.length; i++) {
+            ids[i] = m.getId(members.get(i));
+            sizes[2 * i] = m.getWidth(members.get(i));
+            sizes[2 * i + 1] = m.getHeight(members.get(i));
+         }
+         Subtree st = subtrees.get(ids[0]);
+         if (st == null || !Arrays.equals(st.ids, ids) || !Arrays.equals(st.sizes, sizes)) {
+            st = compute(m, root, members, ids, sizes);
+            recomputed += ids.length;
+         }
+         next.put(ids[0], st);
+         for (int i = 0; i < st.ids.length; i++) {
+            centers.put(st.ids[i], new double[] { offset + st.centerX[i], st.depth[i] });
+            maxDepth = Math.max(maxDepth, (int) st.depth[i]);
+         }
+         offset += st.width + ROOT_GAP;
+      }
+      subtrees = next;
+
+      Map<String, double[]> positions = new HashMap<String, double[]>(m.size() * 2);
+      double outerRadius = Math.max(offset / (2 * Math.PI), V_SPACING * (maxDepth + 1));
+      for (int i = 0; i < m.size(); i++) {
+         double[] c = centers.get(m.getId(i));
+         double x, y;
+         if (radial) {
+            // The tree's horizontal order becomes the angle and its depth the ring.
+            double angle = 2 * Math.PI * c[0] / Math.max(offset, 1);
+            double radius = outerRadius * (c[1] + 1) / (maxDepth + 1);
+            x = outerRadius + MARGIN + radius * Math.cos(angle);
+            y = outerRadius + MARGIN + radius * Math.sin(angle);
+         } else {
+            x = MARGIN + c[0];
+            y = MARGIN + c[1] * V_SPACING;
+         }
+         positions.put(m.getId(i), new double[] { x - m.getWidth(i) / 2, y - m.getHeight(i) / 2 });
+      }
+      return positions;
+   }
+
+   @Override
+   public int getRecomputed() {
+      return recomputed;
+   }
+
+   public void clear() {
+      subtrees.clear();
+   }
+
+   private static void collect(GLayoutModel m, int node, List<Integer> members) {
+      members.add(node);
+      for (int child : m.getChildren(node)) {
+         collect(m, child, members);
+      }
+   }
+
+   private static Subtree compute(GLayoutModel m, int root, List<Integer> members, String[] ids, double[] sizes) {
+      Subtree st = new Subtree();
+      st.ids = ids;
+      st.sizes = sizes;
+      st.centerX = new double[ids.length];
+      st.depth = new double[ids.length];
+      Map<Integer, Integer> slot = new HashMap<Integer, Integer>(ids.length * 2);
+      for (int i = 0; i < ids.length; i++) {
+         slot.put(members.get(i), i);
+      }
+      st.width = place(m, root, 0, 0, slot, st);
+      return st;
+   }
+
+   /**
+    * Places the leaves of a subtree side by side from the left edge and centers every
+    * parent over its children.
+    *
+    * @return the width taken by the subtree.
+    */
+   private static double place(GLayoutModel m, int node, double left, int depth, Map<Integer, Integer> slot, Subtree st) {
+      int i = slot.get(node);
+      st.depth[i] = depth;
+      double own = m.getWidth(node) + H_GAP;
+      int[] children = m.getChildren(node);
+      if (children.length == 0) {
+         st.centerX[i] = left + own / 2;
+         return own;
+      }
+      double childLeft = left;
+      for (int child : children) {
+         childLeft += place(m, child, childLeft, depth + 1, slot, st);
+      }
+      double childrenWidth = childLeft - left;
+      double width = Math.max(own, childrenWidth);
+      if (childrenWidth < width) {
+         shift(m, children, (width - childrenWidth) / 2, slot, st);
+      }
+      st.centerX[i] = left + width / 2;
+      return width;
+   }
+
+   private static void shift(GLayoutModel m, int[] nodes, double dx, Map<Integer, Integer> slot, Subtree st) {
+      for (int node : nodes) {
+         st.centerX[slot.get(node)] += dx;
+         shift(m, m.getChildren(node), dx, slot, st);
+      }
+   }
+}
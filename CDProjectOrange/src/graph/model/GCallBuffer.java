@@ -0,0 +1,54 @@
+/*
+ * @(#) GCallBuffer.java
+ *
+ */
+package graph.model;
+
+import java.util.Arrays;
+
+/**
+ * Call edges collected by one analysis thread, as caller key, callee key and call site
+ * offset. The edges refer to nodes by key only, so a buffer can be filled before the
+ * callee has been declared in the builder; calls to methods that never become nodes are
+ * dropped when the model is built. Not thread-safe.
+ */
+public final class GCallBuffer {
+   private int[] callers = new int[64];
+   private int[] callees = new int[64];
+   private int[] offsets = new int[64];
+   private int   size    = 0;
+
+   public void add(int callerKey, int calleeKey, int offset) {
+      if (size == callers.length) {
+         callers = Arrays.copyOf(callers, size * 2);
+         callees = Arrays.copyOf(callees, size * 2);
+         offsets = Arrays.copyOf(offsets, size * 2);
+      }
+      callers[size] = callerKey;
+      callees[size] = calleeKey;
+      offsets[size] = offset;
+      size++;
+   }
+
+   public void addAll(GCallBuffer other) {
+      for (int i = 0; i < other.size; i++) {
+         add(other.callers[i], other.callees[i], other.offsets[i]);
+      }
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public int callerAt(int i) {
+      return callers[i];
+   }
+
+   public int calleeAt(int i) {
+      return callees[i];
+   }
+
+   public int offsetAt(int i) {
+      return offsets[i];
+   }
+}
@@ -5,17 +5,30 @@
 package graph.model;
 
 public class GClassNode extends GNode {
+   private String prjName;
    private String pkgName;
 
    public GClassNode(String id, String name, String parent) {
       super(id, name, parent);
    }
 
+   public GClassNode(int key, String name, int parentKey) {
+      super(key, name, parentKey);
+   }
+
+   public String getPrjName() {
+      return this.prjName;
+   }
+
+   public void setPrjName(String prjName) {
+      this.prjName = GSymbolTable.instance().intern(prjName);
+   }
+
    public String getPkgName() {
       return this.pkgName;
    }
 
    public void setPkgName(String pkgName) {
-      this.pkgName = pkgName;
+      this.pkgName = GSymbolTable.instance().intern(pkgName);
    }
 }
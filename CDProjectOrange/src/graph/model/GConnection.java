@@ -5,16 +5,29 @@
 package graph.model;
 
 public class GConnection {
-   final String id;
+   /** A package contains a class, or a class a method. */
+   public static final byte CONTAINS = 0;
+   /** A method calls or instantiates the destination. */
+   public static final byte CALLS    = 1;
+
    final String label;
    final GNode  source;
    final GNode  destination;
+   final byte   kind;
 
    public GConnection(String id, String name, GNode source, GNode destination) {
-      this.id = name;
-      this.label = name;
+      this(name, source, destination);
+   }
+
+   public GConnection(String label, GNode source, GNode destination) {
+      this(label, source, destination, CONTAINS);
+   }
+
+   public GConnection(String label, GNode source, GNode destination, byte kind) {
+      this.label = label;
       this.source = source;
       this.destination = destination;
+      this.kind = kind;
    }
 
    public String getLabel() {
@@ -28,4 +41,8 @@ public class GConnection {
    public GNode getDestination() {
       return destination;
    }
+
+   public byte getKind() {
+      return kind;
+   }
 }
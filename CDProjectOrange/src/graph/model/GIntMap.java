@@ -0,0 +1,119 @@
+/*
+ * @(#) GIntMap.java
+ *
+ */
+package graph.model;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing map from node keys to values, without boxing the keys.
+ * Keys are non-negative. Not thread-safe.
+ */
+final class GIntMap<V> {
+   private static final int FREE    = -1;
+   private static final int REMOVED = -2;
+
+   private int[]    keys;
+   private Object[] values;
+   private int      size = 0, used = 0;
+
+   GIntMap() {
+      this(16);
+   }
+
+   GIntMap(int expected) {
+      int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+      keys = new int[capacity];
+      values = new Object[capacity];
+      Arrays.fill(keys, FREE);
+   }
+
+   GIntMap(GIntMap<V> other) {
+      keys = other.keys.clone();
+      values = other.values.clone();
+      size = other.size;
+      used = other.used;
+   }
+
+   int size() {
+      return size;
+   }
+
+   boolean containsKey(int key) {
+      return keys[find(key)] == key;
+   }
+
+   @SuppressWarnings("unchecked")
+   V get(int key) {
+      int i = find(key);
+      return keys[i] == key ? (V) values[i] : null;
+   }
+
+   void put(int key, V value) {
+      int i = find(key);
+      if (keys[i] != key) {
+         if ((used + 1) * 2 > keys.length) {
+            rehash(size + 1 > keys.length / 4 ? keys.length * 2 : keys.length);
+            i = find(key);
+         }
+         if (keys[i] == FREE) {
+            used++;
+         }
+         keys[i] = key;
+         size++;
+      }
+      values[i] = value;
+   }
+
+   @SuppressWarnings("unchecked")
+   V remove(int key) {
+      int i = find(key);
+      if (keys[i] != key) {
+         return null;
+      }
+      V old = (V) values[i];
+      keys[i] = REMOVED;
+      values[i] = null;
+      size--;
+      return old;
+   }
+
+   /**
+    * @return the slot holding the key, or else the free or removed slot to insert it at.
+    */
+   private int find(int key) {
+      int mask = keys.length - 1;
+      int i = (key * 0x9E3779B9) >>> 7 & mask;
+      int firstRemoved = -1;
+      while (keys[i] != FREE) {
+         if (keys[i] == key) {
+            return i;
+         }
+         if (keys[i] == REMOVED && firstRemoved < 0) {
+            firstRemoved = i;
+         }
+         i = (i + 1) & mask;
+      }
+      return firstRemoved >= 0 ? firstRemoved : i;
+   }
+
+   private void rehash(int capacity) {
+      int[] oldKeys = keys;
+      Object[] oldValues = values;
+      keys = new int[capacity];
+      values = new Object[capacity];
+      Arrays.fill(keys, FREE);
+      size = 0;
+      used = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldKeys[i] >= 0) {
+            int j = find(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+            size++;
+            used++;
+         }
+      }
+   }
+}
@@ -13,18 +13,22 @@ public class GMethodNode extends GNode {
       super(id, name, parent);
    }
 
+   public GMethodNode(int key, String name, int parentKey) {
+      super(key, name, parentKey);
+   }
+
    public GMethodNode setPrjName(String prjName) {
-      this.prjName = prjName;
+      this.prjName = GSymbolTable.instance().intern(prjName);
       return this;
    }
 
    public GMethodNode setPkgName(String pkgName) {
-      this.pkgName = pkgName;
+      this.pkgName = GSymbolTable.instance().intern(pkgName);
       return this;
    }
 
    public GMethodNode setClassName(String className) {
-      this.className = className;
+      this.className = GSymbolTable.instance().intern(className);
       return this;
    }
 
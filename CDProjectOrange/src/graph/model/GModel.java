@@ -0,0 +1,323 @@
+/*
+ * @(#) GModel.java
+ *
+ */
+package graph.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the declaration graph. Snapshots are produced by a
+ * GModelBuilder and never change afterwards, so a viewer can keep rendering one
+ * while the next one is built.
+ * <p>
+ * Nodes have a dense index in node order, found by key through an int array indexed by
+ * key. Connections are kept in compressed sparse row form: the outgoing connections
+ * of node i are targets[offsets[i] .. offsets[i + 1]), with the source offset and the
+ * kind of each connection in parallel arrays. GConnection objects are created only when asked for.
+ * A connection is found by its source and destination with a binary search over
+ * sortedEdges, which lists the connections of each source by destination index.
+ */
+public final class GModel {
+   public static final GModel EMPTY = new GModelBuilder(0).build();
+
+   static final int NO_OFFSET = Integer.MIN_VALUE;
+
+   private final long                       version;
+   private final GSymbolTable               symbols;
+   private final GNode[]                    nodes;
+   private final int                        keyBase;
+   private final int[]                      keyIndex;
+   private final int[]                      offsets;
+   private final int[]                      targets;
+   private final int[]                      sortedEdges;
+   private final int[]                      edgeOffsets;
+   private final byte[]                     edgeKinds;
+   private final GIntMap<String>            edgeLabels;
+   private final Map<String, List<GNode>>   unitNodes;
+
+   private final List<GNode>                nodeList;
+   private final List<GConnection>          connectionList;
+
+   /**
+    * @param symbols     the table the nodes were keyed in, which resolves ids for this model.
+    * @param keyIndex    the node index per key - keyBase, or -1 for keys without a node; see indexKeys().
+    * @param edgeOffsets the source offset per connection, or NO_OFFSET where edgeLabels has its label.
+    */
+   GModel(long version, GSymbolTable symbols, GNode[] nodes, int keyBase, int[] keyIndex, int[] offsets, int[] targets, //
+         int[] edgeOffsets, byte[] edgeKinds, GIntMap<String> edgeLabels, Map<String, List<GNode>> unitNodes) {
+      this.version = version;
+      this.symbols = symbols;
+      this.nodes = nodes;
+      this.keyBase = keyBase;
+      this.keyIndex = keyIndex;
+      this.offsets = offsets;
+      this.targets = targets;
+      this.sortedEdges = sortEdges(offsets, targets);
+      this.edgeOffsets = edgeOffsets;
+      this.edgeKinds = edgeKinds;
+      this.edgeLabels = edgeLabels;
+      this.unitNodes = Collections.unmodifiableMap(unitNodes);
+      this.nodeList = Collections.unmodifiableList(Arrays.asList(nodes));
+      this.connectionList = new AbstractList<GConnection>() {
+         @Override
+         public GConnection get(int edge) {
+            return connection(sourceOf(edge), edge);
+         }
+
+         @Override
+         public int size() {
+            return GModel.this.targets.length;
+         }
+      };
+   }
+
+   public long getVersion() {
+      return version;
+   }
+
+   public List<GNode> getNodes() {
+      return nodeList;
+   }
+
+   /**
+    * All connections, grouped by source node. Each element is created on access.
+    */
+   public List<GConnection> getConnections() {
+      return connectionList;
+   }
+
+   public GNode getNode(String id) {
+      return getNode(symbols.findKey(id));
+   }
+
+   public GNode getNode(int key) {
+      int i = indexOf(key);
+      return i < 0 ? null : nodes[i];
+   }
+
+   /**
+    * Class and method nodes by the handle identifier of the compilation unit declaring them.
+    */
+   public Map<String, List<GNode>> getUnitNodes() {
+      return unitNodes;
+   }
+
+   public GConnection getConnection(String srcId, String dstId) {
+      return getConnection(symbols.findKey(srcId), symbols.findKey(dstId));
+   }
+
+   public GConnection getConnection(int srcKey, int dstKey) {
+      int src = indexOf(srcKey), edge = edgeOf(src, indexOf(dstKey));
+      return edge < 0 ? null : connection(src, edge);
+   }
+
+   public String getConnectionLabel(String srcId, String dstId) {
+      return getConnectionLabel(symbols.findKey(srcId), symbols.findKey(dstId));
+   }
+
+   public String getConnectionLabel(int srcKey, int dstKey) {
+      int edge = edgeOf(indexOf(srcKey), indexOf(dstKey));
+      return edge < 0 ? "" : label(edge);
+   }
+
+   /**
+    * @return the source offset labeling the connection, or -1 if there is no such connection or it has another label.
+    */
+   public int getConnectionOffset(int srcKey, int dstKey) {
+      int edge = edgeOf(indexOf(srcKey), indexOf(dstKey));
+      return edge < 0 || edgeOffsets[edge] == NO_OFFSET ? -1 : edgeOffsets[edge];
+   }
+
+   /**
+    * @return the source offset of the node's i-th outgoing connection, or -1 if it has another label.
+    */
+   public int getConnectionOffset(GNode n, int i) {
+      int offset = edgeOffsets[offsets[indexOf(n.getKey())] + i];
+      return offset == NO_OFFSET ? -1 : offset;
+   }
+
+   /**
+    * @return GConnection.CONTAINS or GConnection.CALLS for the node's i-th outgoing connection.
+    */
+   public byte getConnectionKind(GNode n, int i) {
+      return edgeKinds[offsets[indexOf(n.getKey())] + i];
+   }
+
+   /**
+    * The number of outgoing connections of the node.
+    */
+   public int getOutDegree(GNode n) {
+      int i = indexOf(n.getKey());
+      return i < 0 ? 0 : offsets[i + 1] - offsets[i];
+   }
+
+   /**
+    * The destination of the node's i-th outgoing connection, without allocating.
+    */
+   public GNode getConnectedTo(GNode n, int i) {
+      return nodes[targets[offsets[indexOf(n.getKey())] + i]];
+   }
+
+   /**
+    * The destinations of the node's outgoing connections, in insertion order, as a view on the adjacency arrays.
+    */
+   public List<GNode> getConnectedTo(GNode n) {
+      int i = indexOf(n.getKey());
+      if (i < 0 || offsets[i] == offsets[i + 1]) {
+         return Collections.emptyList();
+      }
+      final int from = offsets[i], to = offsets[i + 1];
+      return new AbstractList<GNode>() {
+         @Override
+         public GNode get(int k) {
+            if (k < 0 || from + k >= to) {
+               throw new IndexOutOfBoundsException(String.valueOf(k));
+            }
+            return nodes[targets[from + k]];
+         }
+
+         @Override
+         public int size() {
+            return to - from;
+         }
+      };
+   }
+
+   // =============================================================
+   // Package-private access for GModelBuilder and GModelSnapshot
+   // =============================================================
+
+   int edgeCount() {
+      return targets.length;
+   }
+
+   /** The dense node index of the edge's source. */
+   int sourceOf(int edge) {
+      // The last node whose first edge is at or before the given edge.
+      int lo = 0, hi = nodes.length - 1;
+      while (lo < hi) {
+         int mid = (lo + hi + 1) >>> 1;
+         if (offsets[mid] <= edge) {
+            lo = mid;
+         } else {
+            hi = mid - 1;
+         }
+      }
+      return lo;
+   }
+
+   GNode nodeAt(int index) {
+      return nodes[index];
+   }
+
+   /** The index of the first outgoing connection of the node at the dense index. */
+   int firstEdgeOf(int index) {
+      return offsets[index];
+   }
+
+   int targetOf(int edge) {
+      return targets[edge];
+   }
+
+   int offsetOf(int edge) {
+      return edgeOffsets[edge];
+   }
+
+   byte kindOf(int edge) {
+      return edgeKinds[edge];
+   }
+
+   String customLabelOf(int edge) {
+      return edgeLabels.get(edge);
+   }
+
+   private int indexOf(int key) {
+      int i = key - keyBase;
+      return key < 0 || i < 0 || i >= keyIndex.length ? -1 : keyIndex[i];
+   }
+
+   /**
+    * @return the smallest key of the nodes, the base of their key index.
+    */
+   static int minKey(GNode[] nodes) {
+      int min = nodes.length == 0 ? 0 : Integer.MAX_VALUE;
+      for (GNode node : nodes) {
+         min = Math.min(min, node.getKey());
+      }
+      return min;
+   }
+
+   /**
+    * Maps key - keyBase to the node index. The array spans the keys of these nodes only,
+    * however many keys the symbol table has handed out before.
+    */
+   static int[] indexKeys(GNode[] nodes, int keyBase) {
+      int max = keyBase - 1;
+      for (GNode node : nodes) {
+         max = Math.max(max, node.getKey());
+      }
+      int[] keyIndex = new int[max - keyBase + 1];
+      Arrays.fill(keyIndex, -1);
+      for (int i = 0; i < nodes.length; i++) {
+         keyIndex[nodes[i].getKey() - keyBase] = i;
+      }
+      return keyIndex;
+   }
+
+   /**
+    * Orders the connections of each source by destination, leaving targets in insertion order.
+    */
+   private static int[] sortEdges(int[] offsets, int[] targets) {
+      long[] byTarget = new long[targets.length];
+      for (int e = 0; e < targets.length; e++) {
+         byTarget[e] = (long) targets[e] << 32 | e;
+      }
+      for (int i = 0; i + 1 < offsets.length; i++) {
+         if (offsets[i + 1] - offsets[i] > 1) {
+            Arrays.sort(byTarget, offsets[i], offsets[i + 1]);
+         }
+      }
+      int[] sorted = new int[targets.length];
+      for (int e = 0; e < targets.length; e++) {
+         sorted[e] = (int) byTarget[e];
+      }
+      return sorted;
+   }
+
+   /**
+    * @return the connection from src to dst by dense index, or -1, in O(log degree).
+    */
+   private int edgeOf(int src, int dst) {
+      if (src < 0 || dst < 0) {
+         return -1;
+      }
+      int lo = offsets[src], hi = offsets[src + 1] - 1;
+      while (lo <= hi) {
+         int mid = (lo + hi) >>> 1, edge = sortedEdges[mid];
+         if (targets[edge] < dst) {
+            lo = mid + 1;
+         } else if (targets[edge] > dst) {
+            hi = mid - 1;
+         } else {
+            return edge;
+         }
+      }
+      return -1;
+   }
+
+   private String label(int edge) {
+      if (edgeOffsets[edge] == NO_OFFSET) {
+         return edgeLabels.get(edge);
+      }
+      return (edgeKinds[edge] == GConnection.CALLS ? "call: " : "offset: ") + edgeOffsets[edge];
+   }
+
+   private GConnection connection(int src, int edge) {
+      return new GConnection(label(edge), nodes[src], nodes[targets[edge]], edgeKinds[edge]);
+   }
+}
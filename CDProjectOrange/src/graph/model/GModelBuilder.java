@@ -0,0 +1,327 @@
+/*
+ * @(#) GModelBuilder.java
+ *
+ */
+package graph.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects nodes and connections for a new GModel. Connections are kept as parallel
+ * arrays of source key, destination key, source offset and kind, and are turned into
+ * the model's compressed adjacency arrays by build(). A builder is not thread-safe
+ * and can be built only once.
+ */
+public class GModelBuilder {
+   private static final String OFFSET_LABEL = "offset: ";
+
+   private final long                            version;
+   // The table current when the builder was made, which keys every node it is given.
+   private final GSymbolTable                    symbols   = GSymbolTable.instance();
+   private List<GNode>                           nodes;
+   private GIntMap<GNode>                        nodeMap;
+   private int                                   edgeCount = 0;
+   private int[]                                 edgeSrc, edgeDst, edgeOffset;
+   private byte[]                                edgeKind;
+   private GIntMap<String>                       edgeLabels;
+   private Map<String, List<GNode>>              unitNodes;
+   private boolean                               built = false;
+
+   public GModelBuilder(long version) {
+      this.version = version;
+      this.nodes = new ArrayList<GNode>();
+      this.nodeMap = new GIntMap<GNode>();
+      this.edgeSrc = new int[16];
+      this.edgeDst = new int[16];
+      this.edgeOffset = new int[16];
+      this.edgeKind = new byte[16];
+      this.edgeLabels = new GIntMap<String>();
+      this.unitNodes = new HashMap<String, List<GNode>>();
+   }
+
+   /**
+    * Starts from the contents of an existing snapshot, which is left untouched.
+    */
+   public GModelBuilder(long version, GModel base) {
+      this.version = version;
+      this.nodes = new ArrayList<GNode>(base.getNodes());
+      this.nodeMap = new GIntMap<GNode>(nodes.size());
+      for (GNode n : nodes) {
+         nodeMap.put(n.getKey(), n);
+      }
+      int count = base.edgeCount();
+      this.edgeSrc = new int[Math.max(16, count)];
+      this.edgeDst = new int[edgeSrc.length];
+      this.edgeOffset = new int[edgeSrc.length];
+      this.edgeKind = new byte[edgeSrc.length];
+      this.edgeLabels = new GIntMap<String>();
+      for (int src = 0, e = 0; e < count; src++) {
+         int key = base.nodeAt(src).getKey();
+         for (; e < count && base.sourceOf(e) == src; e++) {
+            edgeSrc[e] = key;
+            edgeDst[e] = base.nodeAt(base.targetOf(e)).getKey();
+            edgeOffset[e] = base.offsetOf(e);
+            edgeKind[e] = base.kindOf(e);
+            if (edgeOffset[e] == GModel.NO_OFFSET) {
+               edgeLabels.put(e, base.customLabelOf(e));
+            }
+         }
+      }
+      this.edgeCount = count;
+      this.unitNodes = new HashMap<String, List<GNode>>();
+      for (Map.Entry<String, List<GNode>> e : base.getUnitNodes().entrySet()) {
+         unitNodes.put(e.getKey(), new ArrayList<GNode>(e.getValue()));
+      }
+   }
+
+   public long getVersion() {
+      return version;
+   }
+
+   public GNode getNode(String id) {
+      return getNode(symbols.findKey(id));
+   }
+
+   public GNode getNode(int key) {
+      return key == GSymbolTable.NO_KEY ? null : nodeMap.get(key);
+   }
+
+   public boolean containsNode(String id) {
+      return getNode(id) != null;
+   }
+
+   public boolean containsNode(int key) {
+      return getNode(key) != null;
+   }
+
+   public GNode addNode(GNode n) {
+      nodes.add(n);
+      nodeMap.put(n.getKey(), n);
+      return n;
+   }
+
+   /**
+    * Records that a class or method node was declared in the given compilation unit,
+    * so that the unit's nodes can be replaced when only that unit changes.
+    */
+   public void addUnitNode(String unitKey, GNode n) {
+      List<GNode> declared = unitNodes.get(unitKey);
+      if (declared == null) {
+         declared = new ArrayList<GNode>();
+         unitNodes.put(unitKey, declared);
+      }
+      declared.add(n);
+   }
+
+   /**
+    * Adds a connection labeled with the source offset of the destination's declaration.
+    * A later connection between the same nodes replaces this one.
+    */
+   public void addConnection(GNode srcNode, GNode dstNode, int offset) {
+      addEdge(srcNode.getKey(), dstNode.getKey(), offset, GConnection.CONTAINS);
+   }
+
+   /**
+    * Adds a call edge between two method nodes by key. The nodes need not have been added
+    * yet; a call whose caller or callee is not a node when the model is built is dropped.
+    */
+   public void addCall(int callerKey, int calleeKey, int offset) {
+      addEdge(callerKey, calleeKey, offset, GConnection.CALLS);
+   }
+
+   public void addCalls(GCallBuffer calls) {
+      for (int i = 0; i < calls.size(); i++) {
+         addEdge(calls.callerAt(i), calls.calleeAt(i), calls.offsetAt(i), GConnection.CALLS);
+      }
+   }
+
+   private void addEdge(int srcKey, int dstKey, int offset, byte kind) {
+      if (edgeCount == edgeSrc.length) {
+         edgeSrc = Arrays.copyOf(edgeSrc, edgeCount * 2);
+         edgeDst = Arrays.copyOf(edgeDst, edgeCount * 2);
+         edgeOffset = Arrays.copyOf(edgeOffset, edgeCount * 2);
+         edgeKind = Arrays.copyOf(edgeKind, edgeCount * 2);
+      }
+      edgeSrc[edgeCount] = srcKey;
+      edgeDst[edgeCount] = dstKey;
+      edgeOffset[edgeCount] = offset;
+      edgeKind[edgeCount] = kind;
+      edgeCount++;
+   }
+
+   /**
+    * Adds a connection with an arbitrary label. Offset labels are stored as their offset.
+    */
+   public void addConnection(GNode srcNode, GNode dstNode, String label) {
+      if (label != null && label.startsWith(OFFSET_LABEL)) {
+         try {
+            addConnection(srcNode, dstNode, Integer.parseInt(label.substring(OFFSET_LABEL.length())));
+            return;
+         } catch (NumberFormatException e) {
+            // Not an offset; kept as a custom label below.
+         }
+      }
+      addConnection(srcNode, dstNode, GModel.NO_OFFSET);
+      edgeLabels.put(edgeCount - 1, label);
+   }
+
+   /**
+    * Removes the nodes declared in the given compilation unit together with their
+    * connections. Package nodes left without any class are removed as well. Calls
+    * from other units into the unit are kept until build(), so they reconnect to
+    * the methods that the unit declares again when it is reanalyzed.
+    */
+   public void removeUnit(String unitKey) {
+      List<GNode> declared = unitNodes.remove(unitKey);
+      if (declared == null) {
+         return;
+      }
+      GIntMap<GNode> packages = new GIntMap<GNode>();
+      for (GNode n : declared) {
+         nodeMap.remove(n.getKey());
+         GNode parentNode = nodeMap.get(n.getParentKey());
+         if (parentNode instanceof GPackageNode) {
+            packages.put(parentNode.getKey(), parentNode);
+         }
+      }
+      removeDanglingConnections(true);
+      for (int e = 0; e < edgeCount; e++) {
+         if (edgeKind[e] == GConnection.CONTAINS) {
+            packages.remove(edgeSrc[e]);
+         }
+      }
+      for (GNode n : declared) {
+         if (packages.get(n.getParentKey()) != null) {
+            nodeMap.remove(n.getParentKey());
+         }
+      }
+      nodes.removeIf(n -> nodeMap.get(n.getKey()) != n);
+   }
+
+   /**
+    * Adds a unit that was analyzed into a model of its own, after removeUnit() has dropped
+    * its previous nodes. Package nodes that are already present are kept.
+    */
+   public void addUnit(String unitKey, GModel unit) {
+      for (GNode n : unit.getNodes()) {
+         if (!(n instanceof GPackageNode && containsNode(n.getKey()))) {
+            addNode(n);
+         }
+      }
+      List<GNode> declared = unit.getUnitNodes().get(unitKey);
+      if (declared != null) {
+         for (GNode n : declared) {
+            addUnitNode(unitKey, n);
+         }
+      }
+      for (int i = 0, n = unit.getNodes().size(); i < n; i++) {
+         int srcKey = unit.nodeAt(i).getKey();
+         for (int e = unit.firstEdgeOf(i), end = unit.firstEdgeOf(i + 1); e < end; e++) {
+            addEdge(srcKey, unit.nodeAt(unit.targetOf(e)).getKey(), unit.offsetOf(e), unit.kindOf(e));
+            if (unit.offsetOf(e) == GModel.NO_OFFSET) {
+               edgeLabels.put(edgeCount - 1, unit.customLabelOf(e));
+            }
+         }
+      }
+   }
+
+   /**
+    * Drops connections whose source or destination is no longer a node, keeping the order of the rest.
+    *
+    * @param keepCalls keep calls whose callee is missing, as long as the caller is a node.
+    */
+   private void removeDanglingConnections(boolean keepCalls) {
+      GIntMap<String> labels = new GIntMap<String>();
+      int w = 0;
+      for (int e = 0; e < edgeCount; e++) {
+         if (!nodeMap.containsKey(edgeSrc[e]) || //
+               !nodeMap.containsKey(edgeDst[e]) && !(keepCalls && edgeKind[e] == GConnection.CALLS)) {
+            continue;
+         }
+         edgeSrc[w] = edgeSrc[e];
+         edgeDst[w] = edgeDst[e];
+         edgeOffset[w] = edgeOffset[e];
+         edgeKind[w] = edgeKind[e];
+         if (edgeOffset[e] == GModel.NO_OFFSET) {
+            labels.put(w, edgeLabels.get(e));
+         }
+         w++;
+      }
+      edgeCount = w;
+      edgeLabels = labels;
+   }
+
+   public GModel build() {
+      if (built) {
+         throw new IllegalStateException("The model has already been built.");
+      }
+      built = true;
+      removeDanglingConnections(false);
+
+      // Dense node indices, found by key.
+      GNode[] nodeArray = nodes.toArray(new GNode[nodes.size()]);
+      int n = nodeArray.length, keyBase = GModel.minKey(nodeArray);
+      int[] keyIndex = GModel.indexKeys(nodeArray, keyBase);
+
+      // Group the connections by source, keeping insertion order within a source.
+      int[] offsets = new int[n + 1];
+      int[] src = new int[edgeCount], dst = new int[edgeCount];
+      for (int e = 0; e < edgeCount; e++) {
+         src[e] = keyIndex[edgeSrc[e] - keyBase];
+         dst[e] = keyIndex[edgeDst[e] - keyBase];
+         offsets[src[e] + 1]++;
+      }
+      for (int i = 0; i < n; i++) {
+         offsets[i + 1] += offsets[i];
+      }
+      int[] next = Arrays.copyOf(offsets, n);
+      int[] order = new int[edgeCount];
+      for (int e = 0; e < edgeCount; e++) {
+         order[next[src[e]]++] = e;
+      }
+
+      // Fill the adjacency arrays; a later connection to the same destination replaces an earlier one.
+      int[] targets = new int[edgeCount], edgeOffsets = new int[edgeCount];
+      byte[] edgeKinds = new byte[edgeCount];
+      GIntMap<String> labels = new GIntMap<String>();
+      int[] seenFrom = new int[n], seenAt = new int[n];
+      Arrays.fill(seenFrom, -1);
+      int w = 0;
+      for (int s = 0; s < n; s++) {
+         int from = offsets[s], to = offsets[s + 1];
+         offsets[s] = w;
+         for (int k = from; k < to; k++) {
+            int e = order[k], d = dst[e];
+            int at = w;
+            if (seenFrom[d] == s) {
+               at = seenAt[d];
+            } else {
+               seenFrom[d] = s;
+               seenAt[d] = w;
+               targets[w++] = d;
+            }
+            edgeOffsets[at] = edgeOffset[e];
+            edgeKinds[at] = edgeKind[e];
+            if (edgeOffset[e] == GModel.NO_OFFSET) {
+               labels.put(at, edgeLabels.get(e));
+            }
+         }
+      }
+      offsets[n] = w;
+
+      GModel model = new GModel(version, symbols, nodeArray, keyBase, keyIndex, offsets, //
+            Arrays.copyOf(targets, w), Arrays.copyOf(edgeOffsets, w), Arrays.copyOf(edgeKinds, w), labels, unitNodes);
+      // The snapshot owns the unit lists now; a builder kept around must not retain anything.
+      nodes = null;
+      nodeMap = null;
+      edgeSrc = edgeDst = edgeOffset = null;
+      edgeKind = null;
+      edgeLabels = null;
+      unitNodes = null;
+      return model;
+   }
+}
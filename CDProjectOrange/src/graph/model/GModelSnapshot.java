@@ -0,0 +1,334 @@
+/*
+ * @(#) GModelSnapshot.java
+ *
+ */
+package graph.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a GModel to a compact binary file and maps it back in, so a session can start
+ * from the last graph instead of analyzing the workspace again. The layout follows the
+ * model's own arrays:
+ * <pre>
+ * header    magic, format version, source stamp and the section sizes
+ * strings   every distinct id, name and unit key once, as length and UTF-8 bytes
+ * nodes     kind, id, name, parent, project, package, class and method as string indices
+ * adjacency offsets, targets, source offsets and kinds of the connections
+ * labels    connection index and string index of every custom label
+ * units     unit key and node indices of every compilation unit
+ * </pre>
+ * A snapshot whose magic, format version or source stamp does not match is ignored.
+ * The source stamp is chosen by the caller to tell whether the sources have changed
+ * since the snapshot was written. Node keys are per session, so nodes are stored by id
+ * and keyed again when the snapshot is read.
+ */
+public final class GModelSnapshot {
+   private static final int  MAGIC          = 0x43445053; // "CDPS"
+   // Bump when the layout or the meaning of the graph changes, so older snapshots are rebuilt.
+   private static final int  VERSION        = 1;
+   private static final int  NONE           = -1;
+   private static final int  HEADER_SIZE    = 16; // magic, format version and source stamp
+
+   private static final byte KIND_PACKAGE   = 0;
+   private static final byte KIND_CLASS     = 1;
+   private static final byte KIND_METHOD    = 2;
+   private static final byte KIND_VARIABLE  = 3;
+   private static final byte KIND_NODE      = 4;
+   private static final int  NODE_FIELDS    = 8;
+
+   private GModelSnapshot() {
+   }
+
+   /**
+    * Writes the model to a temporary file first, so a reader never sees a partial snapshot.
+    */
+   public static void write(GModel model, long sourceStamp, File file) throws IOException {
+      Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+      List<byte[]> strings = new ArrayList<byte[]>();
+      int n = model.getNodes().size(), edges = model.edgeCount();
+
+      int[] nodeFields = new int[n * NODE_FIELDS];
+      Map<GNode, Integer> nodeIndex = new HashMap<GNode, Integer>(n * 2);
+      for (int i = 0; i < n; i++) {
+         GNode node = model.nodeAt(i);
+         nodeIndex.put(node, i);
+         int f = i * NODE_FIELDS;
+         String prj = null, pkg = null, cls = null, mth = null;
+         if (node instanceof GClassNode) {
+            nodeFields[f] = KIND_CLASS;
+            prj = ((GClassNode) node).getPrjName();
+            pkg = ((GClassNode) node).getPkgName();
+         } else if (node instanceof GMethodNode) {
+            nodeFields[f] = KIND_METHOD;
+            prj = ((GMethodNode) node).getPrjName();
+            pkg = ((GMethodNode) node).getPkgName();
+            cls = ((GMethodNode) node).getClassName();
+         } else if (node instanceof GVariableNode) {
+            nodeFields[f] = KIND_VARIABLE;
+            prj = ((GVariableNode) node).getPrjName();
+            pkg = ((GVariableNode) node).getPkgName();
+            cls = ((GVariableNode) node).getClassName();
+            mth = ((GVariableNode) node).getMethodName();
+         } else {
+            nodeFields[f] = node instanceof GPackageNode ? KIND_PACKAGE : KIND_NODE;
+         }
+         nodeFields[f + 1] = indexOf(node.getId(), stringIndex, strings);
+         nodeFields[f + 2] = indexOf(node.getName(), stringIndex, strings);
+         nodeFields[f + 3] = indexOf(node.getParent(), stringIndex, strings);
+         nodeFields[f + 4] = indexOf(prj, stringIndex, strings);
+         nodeFields[f + 5] = indexOf(pkg, stringIndex, strings);
+         nodeFields[f + 6] = indexOf(cls, stringIndex, strings);
+         nodeFields[f + 7] = indexOf(mth, stringIndex, strings);
+      }
+      List<int[]> labels = new ArrayList<int[]>();
+      for (int e = 0; e < edges; e++) {
+         if (model.offsetOf(e) == GModel.NO_OFFSET) {
+            labels.add(new int[] { e, indexOf(model.customLabelOf(e), stringIndex, strings) });
+         }
+      }
+      Map<String, List<GNode>> units = model.getUnitNodes();
+      for (String unitKey : units.keySet()) {
+         indexOf(unitKey, stringIndex, strings);
+      }
+
+      File tmp = new File(file.getPath() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeLong(sourceStamp);
+         out.writeInt(strings.size());
+         out.writeInt(n);
+         out.writeInt(edges);
+         out.writeInt(labels.size());
+         out.writeInt(units.size());
+         for (byte[] s : strings) {
+            out.writeInt(s.length);
+            out.write(s);
+         }
+         for (int v : nodeFields) {
+            out.writeInt(v);
+         }
+         for (int i = 0; i <= n; i++) {
+            out.writeInt(i < n ? model.firstEdgeOf(i) : edges);
+         }
+         for (int e = 0; e < edges; e++) {
+            out.writeInt(model.targetOf(e));
+         }
+         for (int e = 0; e < edges; e++) {
+            out.writeInt(model.offsetOf(e));
+         }
+         for (int e = 0; e < edges; e++) {
+            out.writeByte(model.kindOf(e));
+         }
+         for (int[] label : labels) {
+            out.writeInt(label[0]);
+            out.writeInt(label[1]);
+         }
+         for (Map.Entry<String, List<GNode>> e : units.entrySet()) {
+            out.writeInt(stringIndex.get(e.getKey()));
+            out.writeInt(e.getValue().size());
+            for (GNode node : e.getValue()) {
+               Integer i = nodeIndex.get(node);
+               out.writeInt(i == null ? NONE : i);
+            }
+         }
+      }
+      if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+         throw new IOException("Could not replace the snapshot " + file);
+      }
+   }
+
+   private static int indexOf(String s, Map<String, Integer> stringIndex, List<byte[]> strings) {
+      if (s == null) {
+         return NONE;
+      }
+      Integer i = stringIndex.get(s);
+      if (i == null) {
+         i = strings.size();
+         stringIndex.put(s, i);
+         strings.add(s.getBytes(StandardCharsets.UTF_8));
+      }
+      return i;
+   }
+
+   /**
+    * Maps the snapshot and rebuilds the model from it. The model copies everything it
+    * needs, so the channel is closed and the mapping released before returning; an open
+    * mapping would keep the next write() from replacing the file on Windows.
+    *
+    * @param version the version of the rebuilt model, e.g. from GModelProvider.newBuilder().
+    * @return the model, or null if there is no snapshot or it is stale, unreadable or for another sourceStamp.
+    */
+   public static GModel read(File file, long sourceStamp, long version) {
+      if (!file.isFile()) {
+         return null;
+      }
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         try {
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != sourceStamp) {
+               return null;
+            }
+            return read(buf, version);
+         } finally {
+            unmap(buf);
+         }
+      } catch (IOException | RuntimeException e) {
+         // A truncated or corrupt snapshot is treated as no snapshot; the caller analyzes instead.
+         return null;
+      }
+   }
+
+   private static GModel read(MappedByteBuffer buf, long version) {
+      int stringCount = buf.getInt(), n = buf.getInt(), edges = buf.getInt();
+      int labelCount = buf.getInt(), unitCount = buf.getInt();
+      // Every section must fit in the rest of the file before any array is sized from it.
+      if (stringCount < 0 || n < 0 || edges < 0 || labelCount < 0 || unitCount < 0) {
+         return null;
+      }
+      long minSize = 4L * stringCount + 4L * NODE_FIELDS * n + 4L * (n + 1) + 9L * edges + 8L * labelCount + 8L * unitCount;
+      if (minSize > buf.remaining()) {
+         return null;
+      }
+
+      GSymbolTable symbols = GSymbolTable.instance();
+      String[] strings = new String[stringCount];
+      byte[] scratch = new byte[256];
+      for (int i = 0; i < stringCount; i++) {
+         int length = buf.getInt();
+         if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+         }
+         buf.get(scratch, 0, length);
+         strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+      }
+
+      int[] nodeFields = new int[n * NODE_FIELDS];
+      buf.asIntBuffer().get(nodeFields);
+      buf.position(buf.position() + nodeFields.length * 4);
+      GNode[] nodes = new GNode[n];
+      for (int i = 0; i < n; i++) {
+         nodes[i] = node(nodeFields, i * NODE_FIELDS, strings, symbols);
+      }
+      int keyBase = GModel.minKey(nodes);
+      int[] keyIndex = GModel.indexKeys(nodes, keyBase);
+
+      int[] offsets = new int[n + 1], targets = new int[edges], edgeOffsets = new int[edges];
+      byte[] edgeKinds = new byte[edges];
+      buf.asIntBuffer().get(offsets);
+      buf.position(buf.position() + offsets.length * 4);
+      buf.asIntBuffer().get(targets);
+      buf.position(buf.position() + targets.length * 4);
+      buf.asIntBuffer().get(edgeOffsets);
+      buf.position(buf.position() + edgeOffsets.length * 4);
+      buf.get(edgeKinds);
+      if (offsets[0] != 0 || offsets[n] != edges) {
+         return null;
+      }
+      for (int i = 0; i < n; i++) {
+         if (offsets[i] > offsets[i + 1]) {
+            return null;
+         }
+      }
+      for (int e = 0; e < edges; e++) {
+         if (targets[e] < 0 || targets[e] >= n) {
+            return null;
+         }
+      }
+
+      GIntMap<String> edgeLabels = new GIntMap<String>(labelCount);
+      for (int i = 0; i < labelCount; i++) {
+         int edge = buf.getInt();
+         if (edge < 0 || edge >= edges) {
+            return null;
+         }
+         edgeLabels.put(edge, strings[buf.getInt()]);
+      }
+      Map<String, List<GNode>> unitNodes = new HashMap<String, List<GNode>>(unitCount * 2);
+      for (int i = 0; i < unitCount; i++) {
+         String unitKey = strings[buf.getInt()];
+         int count = buf.getInt();
+         List<GNode> declared = new ArrayList<GNode>(count);
+         for (int k = 0; k < count; k++) {
+            int index = buf.getInt();
+            if (index != NONE) {
+               declared.add(nodes[index]);
+            }
+         }
+         unitNodes.put(unitKey, declared);
+      }
+      return new GModel(version, symbols, nodes, keyBase, keyIndex, offsets, targets, edgeOffsets, edgeKinds, edgeLabels, unitNodes);
+   }
+
+   /**
+    * Releases the mapping now instead of when the buffer is collected. Java has no public
+    * unmap, so this uses Unsafe.invokeCleaner on Java 9 and later and the buffer's cleaner
+    * on Java 8. If neither is available the mapping stays until the next GC. The buffer
+    * must not be touched afterwards.
+    */
+   private static void unmap(MappedByteBuffer buf) {
+      try {
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+         Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+         theUnsafe.setAccessible(true);
+         invokeCleaner.invoke(theUnsafe.get(null), buf);
+         return;
+      } catch (ReflectiveOperationException | RuntimeException e) {
+         // Java 8 has no invokeCleaner; fall through to the buffer's own cleaner.
+      }
+      try {
+         Method cleanerMethod = buf.getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         Object cleaner = cleanerMethod.invoke(buf);
+         if (cleaner != null) {
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+         }
+      } catch (ReflectiveOperationException | RuntimeException e) {
+         // Left to the garbage collector.
+      }
+   }
+
+   private static GNode node(int[] fields, int f, String[] strings, GSymbolTable symbols) {
+      String id = strings[fields[f + 1]], name = strings[fields[f + 2]];
+      String parent = string(strings, fields[f + 3]);
+      int key = symbols.keyOf(id), parentKey = parent == null ? GSymbolTable.NO_KEY : symbols.keyOf(parent);
+      String prj = string(strings, fields[f + 4]), pkg = string(strings, fields[f + 5]);
+      String cls = string(strings, fields[f + 6]), mth = string(strings, fields[f + 7]);
+      switch (fields[f]) {
+      case KIND_PACKAGE:
+         return new GPackageNode(key, name, parentKey);
+      case KIND_CLASS:
+         GClassNode cNode = new GClassNode(key, name, parentKey);
+         cNode.setPrjName(prj);
+         cNode.setPkgName(pkg);
+         return cNode;
+      case KIND_METHOD:
+         return new GMethodNode(key, name, parentKey).setPrjName(prj).setPkgName(pkg).setClassName(cls);
+      case KIND_VARIABLE:
+         return new GVariableNode(key, name, parentKey).setPrjName(prj).setPkgName(pkg).setClassName(cls).setMethodName(mth);
+      default:
+         return new GNode(key, name, parentKey);
+      }
+   }
+
+   private static String string(String[] strings, int index) {
+      return index == NONE ? null : strings[index];
+   }
+}
@@ -4,21 +4,28 @@
  */
 package graph.model;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class GNode {
+   private final int    key;
+   private final int    parentKey;
    private final String id;
    private final String name;
    private final String parent;
-   private List<GNode>  connections;
    private GNodeType    type;
 
    public GNode(String id, String name, String parent) {
-      this.id = id;
-      this.name = name;
-      this.parent = parent;
-      this.connections = new ArrayList<GNode>();
+      this(GSymbolTable.instance().keyOf(id), name, parent == null ? GSymbolTable.NO_KEY : GSymbolTable.instance().keyOf(parent));
+   }
+
+   /**
+    * @param key the node's key in the GSymbolTable; the id string is shared with every node of that key.
+    */
+   public GNode(int key, String name, int parentKey) {
+      GSymbolTable symbols = GSymbolTable.instance();
+      this.key = key;
+      this.parentKey = parentKey;
+      this.id = symbols.idOf(key);
+      this.name = symbols.intern(name);
+      this.parent = symbols.idOf(parentKey);
       this.type = GNodeType.InValid;
    }
 
@@ -26,6 +33,17 @@ public class GNode {
       return id;
    }
 
+   /**
+    * The compact key of the node id, see GSymbolTable.
+    */
+   public int getKey() {
+      return key;
+   }
+
+   public int getParentKey() {
+      return parentKey;
+   }
+
    public String getName() {
       return name;
    }
@@ -34,10 +52,6 @@ public class GNode {
       return this.parent;
    }
 
-   public List<GNode> getConnectedTo() {
-      return connections;
-   }
-
    public void setNodeType(GNodeType type) {
       this.type = type;
    }
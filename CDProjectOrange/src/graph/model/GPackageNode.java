@@ -9,4 +9,8 @@ public class GPackageNode extends GNode {
    public GPackageNode(String id, String name, String parent) {
       super(id, name, parent);
    }
+
+   public GPackageNode(int key, String name, int parentKey) {
+      super(key, name, parentKey);
+   }
 }
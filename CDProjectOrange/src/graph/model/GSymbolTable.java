@@ -0,0 +1,196 @@
+/*
+ * @(#) GSymbolTable.java
+ *
+ */
+package graph.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the project, package, class and member name segments of node ids and gives
+ * every qualified id a compact int key. A qualified id is built as parent id + "." + segment
+ * the first time its (parent key, segment) pair is seen; later lookups of the same pair
+ * return the existing key without building a string, and every node with that id shares
+ * one id string.
+ * <p>
+ * Keys are never reused, so a key stays valid across model snapshots. The table is shared
+ * by all builders and is thread-safe. Ids that no model uses any more are only dropped
+ * when a full analysis rebuilds the table. The new table numbers its keys from where the
+ * old one stopped, so a stale key misses instead of naming another id; only when the key
+ * range runs low does a rebuild start again at 0.
+ */
+public final class GSymbolTable {
+   public static final int NO_KEY = -1;
+
+   // A rebuild past this key starts again at 0; a table has the other half of the range to itself.
+   private static final int           KEY_LIMIT      = Integer.MAX_VALUE / 2;
+
+   private static volatile GSymbolTable current = new GSymbolTable(0);
+
+   private final Map<String, Integer> segmentSymbols = new HashMap<String, Integer>();
+   private String[]                   segments       = new String[256];
+   private int                        segmentCount   = 0;
+
+   private final Map<String, Integer> keysById       = new HashMap<String, Integer>();
+   // ids[key - keyBase]
+   private final int                  keyBase;
+   private String[]                   ids            = new String[1024];
+   private int                        keyCount       = 0;
+
+   // Open-addressing map from (parent key + 1) << 32 | segment symbol to key.
+   private long[]                     childSlots     = new long[2048];
+   private int[]                      childKeys      = new int[2048];
+   private int                        childCount     = 0;
+
+   private GSymbolTable(int keyBase) {
+      this.keyBase = keyBase;
+      Arrays.fill(childSlots, -1L);
+   }
+
+   public static GSymbolTable instance() {
+      return current;
+   }
+
+   /**
+    * Replaces the shared table with an empty one, so the ids of the old models are dropped
+    * with them. Call it before a full analysis creates its builder, while no other builder
+    * is in use, e.g. under AnalysisJob's scheduling rule. Models keep the table they were
+    * keyed in, so the published model still finds its nodes by id until it is replaced.
+    *
+    * @return the previous table, to restore() if the analysis does not publish its model.
+    */
+   public static synchronized GSymbolTable rebuild() {
+      GSymbolTable previous = current;
+      int base = previous.nextKey();
+      current = new GSymbolTable(base > KEY_LIMIT ? 0 : base);
+      return previous;
+   }
+
+   private synchronized int nextKey() {
+      return keyBase + keyCount;
+   }
+
+   /**
+    * Makes a table returned by rebuild() the shared one again, e.g. when the analysis was canceled.
+    */
+   public static synchronized void restore(GSymbolTable previous) {
+      current = previous;
+   }
+
+   /**
+    * @return the canonical instance of the segment.
+    */
+   public synchronized String intern(String segment) {
+      if (segment == null) {
+         return null;
+      }
+      // symbol() may grow the array, so it has to run before the array is read.
+      int symbol = symbol(segment);
+      return segments[symbol];
+   }
+
+   /**
+    * @param parentKey the key of the parent id, or NO_KEY for a top-level segment such as a project name.
+    * @return the key of parent id + "." + segment, assigned on first use.
+    */
+   public synchronized int key(int parentKey, String segment) {
+      long slot = ((long) (parentKey + 1) << 32) | symbol(segment);
+      int i = indexOf(slot);
+      if (childSlots[i] == slot) {
+         return childKeys[i];
+      }
+      String id = (parentKey == NO_KEY) ? segments[symbol(segment)] : ids[parentKey - keyBase] + "." + segment;
+      int key = keyOf(id);
+      putChild(i, slot, key);
+      return key;
+   }
+
+   /**
+    * @return the key of a fully qualified id, assigned on first use.
+    */
+   public synchronized int keyOf(String id) {
+      Integer key = keysById.get(id);
+      if (key != null) {
+         return key;
+      }
+      if (keyCount == ids.length) {
+         ids = Arrays.copyOf(ids, keyCount * 2);
+      }
+      ids[keyCount] = id;
+      keysById.put(id, keyBase + keyCount);
+      return keyBase + keyCount++;
+   }
+
+   /**
+    * @return the key of the id, or NO_KEY if no node has had this id.
+    */
+   public synchronized int findKey(String id) {
+      Integer key = keysById.get(id);
+      return key == null ? NO_KEY : key;
+   }
+
+   /**
+    * @return the id of the key, or null for NO_KEY and for keys of another table.
+    */
+   public synchronized String idOf(int key) {
+      int i = key - keyBase;
+      return key == NO_KEY || i < 0 || i >= ids.length ? null : ids[i];
+   }
+
+   /**
+    * The number of ids in this table.
+    */
+   public synchronized int size() {
+      return keysById.size();
+   }
+
+   private int symbol(String segment) {
+      Integer symbol = segmentSymbols.get(segment);
+      if (symbol != null) {
+         return symbol;
+      }
+      if (segmentCount == segments.length) {
+         segments = Arrays.copyOf(segments, segmentCount * 2);
+      }
+      segments[segmentCount] = segment;
+      segmentSymbols.put(segment, segmentCount);
+      return segmentCount++;
+   }
+
+   private int indexOf(long slot) {
+      int mask = childSlots.length - 1;
+      int i = (int) (mix(slot) & mask);
+      while (childSlots[i] != -1L && childSlots[i] != slot) {
+         i = (i + 1) & mask;
+      }
+      return i;
+   }
+
+   private void putChild(int i, long slot, int key) {
+      childSlots[i] = slot;
+      childKeys[i] = key;
+      if (++childCount * 2 > childSlots.length) {
+         long[] oldSlots = childSlots;
+         int[] oldKeys = childKeys;
+         childSlots = new long[oldSlots.length * 2];
+         childKeys = new int[oldSlots.length * 2];
+         Arrays.fill(childSlots, -1L);
+         for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] != -1L) {
+               int k = indexOf(oldSlots[j]);
+               childSlots[k] = oldSlots[j];
+               childKeys[k] = oldKeys[j];
+            }
+         }
+      }
+   }
+
+   private static long mix(long h) {
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      return h;
+   }
+}
@@ -10,23 +10,27 @@ public class GVariableNode extends GNode {
       super(id, name, parent);
    }
 
+   public GVariableNode(int key, String name, int parentKey) {
+      super(key, name, parentKey);
+   }
+
    public GVariableNode setPrjName(String prjName) {
-      this.prjName = prjName;
+      this.prjName = GSymbolTable.instance().intern(prjName);
       return this;
    }
 
    public GVariableNode setPkgName(String pkgName) {
-      this.pkgName = pkgName;
+      this.pkgName = GSymbolTable.instance().intern(pkgName);
       return this;
    }
 
    public GVariableNode setClassName(String className) {
-      this.className = className;
+      this.className = GSymbolTable.instance().intern(className);
       return this;
    }
    
    public GVariableNode setMethodName(String methodName) {
-	      this.methodName = methodName;
+	      this.methodName = GSymbolTable.instance().intern(methodName);
 	      return this;
 	   }
 
@@ -4,6 +4,14 @@
  */
 package graph.provider;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.draw2d.ColorConstants;
 import org.eclipse.draw2d.IFigure;
 import org.eclipse.jface.viewers.LabelProvider;
@@ -17,25 +25,71 @@ import graph.model.GNodeType;
 import graph.model.GPackageNode;
 
 public class GLabelProvider extends LabelProvider implements IEntityStyleProvider {
+   private final GNodeContentProvider contentProvider;
+   // Keys of the methods suggested for a move and of their suggested destinations.
+   private Set<Integer>               suggestedKeys = Collections.emptySet();
+   // Clone group index by method key; groups are told apart by a cycling palette.
+   private Map<Integer, Integer>      cloneGroups   = Collections.emptyMap();
+   private static final Color[]       CLONE_COLORS  = { ColorConstants.orange, ColorConstants.cyan, //
+         ColorConstants.green, ColorConstants.lightGray, ColorConstants.red, ColorConstants.gray };
+
+   public GLabelProvider(GNodeContentProvider contentProvider) {
+      this.contentProvider = contentProvider;
+   }
+
+   public void setSuggestedNodes(Collection<GNode> nodes) {
+      Set<Integer> keys = new HashSet<Integer>();
+      for (GNode n : nodes) {
+         keys.add(n.getKey());
+      }
+      this.suggestedKeys = keys;
+   }
+
+   /**
+    * @param groups the method keys of each clone group; an empty list clears the highlighting.
+    */
+   public void setCloneGroups(List<int[]> groups) {
+      Map<Integer, Integer> groupOfKey = new HashMap<Integer, Integer>();
+      for (int g = 0; g < groups.size(); g++) {
+         for (int key : groups.get(g)) {
+            groupOfKey.put(key, g);
+         }
+      }
+      this.cloneGroups = groupOfKey;
+   }
+
    @Override
    public String getText(Object element) {
       // Create a label for node.
       if (element instanceof GNode) {
          GNode myNode = (GNode) element;
+         if (contentProvider.isLazy() && !contentProvider.isExpanded(myNode)) {
+            return myNode.getName() + summary(contentProvider.countDescendants(myNode));
+         }
          return myNode.getName();
       }
       // Create a label for connection.
       if (element instanceof EntityConnectionData) {
          EntityConnectionData eCon = (EntityConnectionData) element;
          if (eCon.source instanceof GNode) {
-            return GModelProvider.instance().getConnectionLabel( //
-                  ((GNode) eCon.source).getId(), //
-                  ((GNode) eCon.dest).getId());
+            return contentProvider.getModel().getConnectionLabel( //
+                  ((GNode) eCon.source).getKey(), //
+                  ((GNode) eCon.dest).getKey());
          }
       }
       return "";
    }
 
+   /**
+    * Aggregate counts shown on a collapsed node in place of its children.
+    */
+   private static String summary(int[] counts) {
+      if (counts[0] > 0) {
+         return "\n" + counts[0] + " classes, " + counts[1] + " methods";
+      }
+      return counts[1] > 0 ? "\n" + counts[1] + " methods" : "";
+   }
+
    @Override
    public boolean fisheyeNode(Object arg0) {
       return false;
@@ -53,6 +107,10 @@ public class GLabelProvider extends LabelProvider implements IEntityStyleProvide
 
    @Override
    public Color getForegroundColour(Object arg0) {
+      // A marked move destination keeps its colors when the lazy graph is refreshed.
+      if (arg0 instanceof GNode && ((GNode) arg0).getNodeType() == GNodeType.UserDoubleClicked) {
+         return ColorConstants.red;
+      }
       return ColorConstants.black;
    }
 
@@ -62,6 +120,15 @@ public class GLabelProvider extends LabelProvider implements IEntityStyleProvide
    }
 
    private Color getNodeColor(Object o) {
+      if (o instanceof GNode && ((GNode) o).getNodeType() == GNodeType.UserDoubleClicked) {
+         return ColorConstants.blue;
+      }
+      if (o instanceof GNode && suggestedKeys.contains(((GNode) o).getKey())) {
+         return (o instanceof GClassNode) ? ColorConstants.cyan : ColorConstants.orange;
+      }
+      if (o instanceof GNode && cloneGroups.containsKey(((GNode) o).getKey())) {
+         return CLONE_COLORS[cloneGroups.get(((GNode) o).getKey()) % CLONE_COLORS.length];
+      }
       if (o instanceof GPackageNode) {
          return ColorConstants.lightGreen;
       }
@@ -4,56 +4,85 @@
  */
 package graph.provider;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import graph.model.GConnection;
+import graph.model.GModel;
+import graph.model.GModelBuilder;
 import graph.model.GNode;
 
+/**
+ * Holds the current graph snapshot. Analyses fill a builder and publish the
+ * finished snapshot with a single reference swap.
+ */
 public class GModelProvider {
-   private static List<GConnection>  connections = new ArrayList<GConnection>();
-   private static List<GNode>        nodes       = new ArrayList<GNode>();
-
-   private static Map<String, GNode> nodeMap     = new HashMap<String, GNode>();
+   private static AtomicReference<GModel> model    = new AtomicReference<GModel>(GModel.EMPTY);
+   private static AtomicLong              versions = new AtomicLong();
 
-   static GModelProvider             singleton   = null;
+   static GModelProvider                  singleton = null;
 
    public GModelProvider() {
    }
 
-   public static GModelProvider instance() {
+   public static synchronized GModelProvider instance() {
       if (singleton == null) {
          singleton = new GModelProvider();
       }
       return singleton;
    }
 
+   public GModel getModel() {
+      return model.get();
+   }
+
+   /**
+    * A version for a snapshot that is not made by a builder, such as one read from disk.
+    */
+   public long nextVersion() {
+      return versions.incrementAndGet();
+   }
+
+   public GModelBuilder newBuilder() {
+      return new GModelBuilder(versions.incrementAndGet());
+   }
+
+   /**
+    * A builder that starts from the given snapshot, for incremental updates.
+    */
+   public GModelBuilder newBuilder(GModel base) {
+      return new GModelBuilder(versions.incrementAndGet(), base);
+   }
+
+   public void publish(GModel m) {
+      model.set(m);
+   }
+
+   /**
+    * Publishes the snapshot only if the current one is still the snapshot it was derived from.
+    */
+   public boolean publish(GModel base, GModel m) {
+      return model.compareAndSet(base, m);
+   }
+
    public List<GNode> getNodes() {
-      return nodes;
+      return getModel().getNodes();
    }
 
    public List<GConnection> getConnections() {
-      return connections;
+      return getModel().getConnections();
    }
 
-   public Map<String, GNode> getNodeMap() {
-      return nodeMap;
+   public GNode getNode(String id) {
+      return getModel().getNode(id);
    }
 
-   public String getConnectionLabel(String srcId, String dstId) {
-      for (GConnection iCon : connections) {
-         if (iCon.getSource().getId().equals(srcId) && //
-               iCon.getDestination().getId().equals(dstId)) {
-            return iCon.getLabel();
-         }
-      }
-      return "";
+   public GConnection getConnection(String srcId, String dstId) {
+      return getModel().getConnection(srcId, dstId);
    }
 
-   public void reset() {
-      nodes.clear();
-      nodeMap.clear();
+   public String getConnectionLabel(String srcId, String dstId) {
+      return getModel().getConnectionLabel(srcId, dstId);
    }
 }
@@ -4,21 +4,185 @@
  */
 package graph.provider;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.zest.core.viewers.IGraphEntityContentProvider;
 
+import graph.model.GClassNode;
+import graph.model.GMethodNode;
+import graph.model.GModel;
 import graph.model.GNode;
+import graph.model.GPackageNode;
 
 public class GNodeContentProvider extends ArrayContentProvider implements IGraphEntityContentProvider {
    /* ArrayContentProvider - This implementation of IStructuredContentProvider handles 
     * the case where the viewer input is an unchanging array or collection of elements. 
+    * A GModel input is unchanging as well; the viewer renders that snapshot until a new one is set.
+    */
+   private GModel model = GModel.EMPTY;
+
+   /* In lazy mode only package nodes and the children of expanded nodes are handed to the
+    * viewer, so Zest creates figures for what is visible only. Expanded node ids outlive
+    * model snapshots; the descendant counts are cached per snapshot.
     */
+   private boolean             lazy             = false;
+   private final Set<String>   expandedIds      = new HashSet<String>();
+   private Set<GNode>          visibleNodes     = new HashSet<GNode>();
+   private Map<String, int[]>  descendantCounts = new HashMap<String, int[]>();
+
+   /* The viewer asks for the connections of every node on each refresh; the arrays are kept
+    * until the input or the visible nodes change.
+    */
+   private Map<GNode, Object[]> connectedCache  = new HashMap<GNode, Object[]>();
+
+   @Override
+   public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+      this.model = (newInput instanceof GModel) ? (GModel) newInput : GModel.EMPTY;
+      this.descendantCounts = new HashMap<String, int[]>();
+      this.connectedCache = new HashMap<GNode, Object[]>();
+   }
+
+   @Override
+   public Object[] getElements(Object inputElement) {
+      if (inputElement instanceof GModel) {
+         GModel m = (GModel) inputElement;
+         if (!lazy) {
+            return m.getNodes().toArray();
+         }
+         List<GNode> visible = new ArrayList<GNode>();
+         for (GNode n : m.getNodes()) {
+            if (n instanceof GPackageNode) {
+               addVisible(m, n, visible);
+            }
+         }
+         visibleNodes = new HashSet<GNode>(visible);
+         connectedCache = new HashMap<GNode, Object[]>();
+         return visible.toArray();
+      }
+      return super.getElements(inputElement);
+   }
+
+   private void addVisible(GModel m, GNode n, List<GNode> visible) {
+      visible.add(n);
+      if (!expandedIds.contains(n.getId())) {
+         return;
+      }
+      for (int i = 0, degree = m.getOutDegree(n); i < degree; i++) {
+         GNode child = m.getConnectedTo(n, i);
+         if (isChild(n, child)) {
+            addVisible(m, child, visible);
+         }
+      }
+   }
+
    @Override
    public Object[] getConnectedTo(Object entity) {
       if (entity instanceof GNode) {
          GNode node = (GNode) entity;
-         return node.getConnectedTo().toArray();
+         Object[] connected = connectedCache.get(node);
+         if (connected == null) {
+            int degree = model.getOutDegree(node), count = 0;
+            connected = new Object[degree];
+            for (int i = 0; i < degree; i++) {
+               GNode dst = model.getConnectedTo(node, i);
+               if (!lazy || visibleNodes.contains(dst)) {
+                  connected[count++] = dst;
+               }
+            }
+            if (count < degree) {
+               connected = Arrays.copyOf(connected, count);
+            }
+            connectedCache.put(node, connected);
+         }
+         return connected;
       }
       throw new RuntimeException("Type not supported");
    }
-}
\ No newline at end of file
+
+   public void setLazy(boolean lazy) {
+      this.lazy = lazy;
+      this.connectedCache = new HashMap<GNode, Object[]>();
+   }
+
+   public boolean isLazy() {
+      return lazy;
+   }
+
+   public boolean isExpanded(GNode n) {
+      return expandedIds.contains(n.getId());
+   }
+
+   /**
+    * @return false if the node has no children or is already expanded.
+    */
+   public boolean expand(GNode n) {
+      if (n instanceof GMethodNode) {
+         return false;
+      }
+      int[] counts = countDescendants(n);
+      return counts[0] + counts[1] > 0 && expandedIds.add(n.getId());
+   }
+
+   /**
+    * Collapses the node together with its expanded descendants.
+    *
+    * @return false if the node was not expanded.
+    */
+   public boolean collapse(GNode n) {
+      if (!expandedIds.remove(n.getId())) {
+         return false;
+      }
+      for (int i = 0, degree = model.getOutDegree(n); i < degree; i++) {
+         GNode child = model.getConnectedTo(n, i);
+         if (isChild(n, child)) {
+            collapse(child);
+         }
+      }
+      return true;
+   }
+
+   public void collapseAll() {
+      expandedIds.clear();
+   }
+
+   /**
+    * The number of class and method nodes below a node, as {classes, methods}.
+    */
+   public int[] countDescendants(GNode n) {
+      int[] counts = descendantCounts.get(n.getId());
+      if (counts == null) {
+         counts = new int[2];
+         for (int i = 0, degree = model.getOutDegree(n); i < degree; i++) {
+            GNode child = model.getConnectedTo(n, i);
+            if (!isChild(n, child)) {
+               continue;
+            }
+            counts[child instanceof GClassNode ? 0 : 1]++;
+            int[] childCounts = countDescendants(child);
+            counts[0] += childCounts[0];
+            counts[1] += childCounts[1];
+         }
+         descendantCounts.put(n.getId(), counts);
+      }
+      return counts;
+   }
+
+   private static boolean isChild(GNode parent, GNode child) {
+      return parent.getKey() == child.getParentKey();
+   }
+
+   /**
+    * The snapshot currently shown by the viewer.
+    */
+   public GModel getModel() {
+      return model;
+   }
+}
@@ -11,7 +11,6 @@ import org.eclipse.e4.core.di.annotations.Execute;
 import org.eclipse.e4.ui.model.application.ui.basic.MPart;
 import org.eclipse.e4.ui.workbench.modeling.EPartService;
 
-import analysis.ProjectAnalyzer;
 import view.MyGraphView;
 
 public class ASTZestHandler {
@@ -19,8 +18,7 @@ public class ASTZestHandler {
    public void execute(EPartService service) {
       MPart findPart = service.findPart(MyGraphView.VIEW_ID);
       if (findPart != null && findPart.getObject() instanceof MyGraphView) {
-         new ProjectAnalyzer().analyze();
-         ((MyGraphView) findPart.getObject()).update();
+         ((MyGraphView) findPart.getObject()).scheduleAnalysis(true);
       }
    }
 }
\ No newline at end of file
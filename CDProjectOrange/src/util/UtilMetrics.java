@@ -0,0 +1,213 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-phase timings and counters of the analysis pipeline, readable through JMX and
+ * dumpable to a file. Collection is off unless the system property cdpo.metrics is
+ * true or it is switched on through JMX; while off, start() and count() only read a
+ * volatile flag. Phase times from parallel workers are summed, so they can exceed the
+ * wall-clock time.
+ * <pre>
+ * long start = UtilMetrics.instance().start();
+ * ...
+ * UtilMetrics.instance().stop(UtilMetrics.Phase.PARSE, start);
+ * </pre>
+ */
+public class UtilMetrics implements UtilMetricsMXBean {
+   public static final String OBJECT_NAME = "CDProjectOrange:type=Metrics";
+
+   public enum Phase {
+      ENUMERATE, PARSE, VISIT, PUBLISH, LAYOUT, RENDER
+   }
+
+   public enum Counter {
+      UNITS_PARSED, NODES_CREATED, EDGES_CREATED, BINDINGS_RESOLVED
+   }
+
+   private static UtilMetrics singleton = null;
+
+   private volatile boolean       enabled    = Boolean.getBoolean("cdpo.metrics");
+   private final LongAdder[]      phaseCalls = adders(Phase.values().length);
+   private final LongAdder[]      phaseNanos = adders(Phase.values().length);
+   private final LongAccumulator[] phaseMax  = new LongAccumulator[Phase.values().length];
+   private final LongAdder[]      counters   = adders(Counter.values().length);
+
+   private UtilMetrics() {
+      for (int i = 0; i < phaseMax.length; i++) {
+         phaseMax[i] = new LongAccumulator(Math::max, 0);
+      }
+   }
+
+   public static synchronized UtilMetrics instance() {
+      if (singleton == null) {
+         singleton = new UtilMetrics();
+         register(singleton);
+      }
+      return singleton;
+   }
+
+   private static void register(UtilMetrics metrics) {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName(OBJECT_NAME);
+         // A reloaded plug-in replaces the bean of its previous class loader.
+         if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+         }
+         server.registerMBean(metrics, name);
+      } catch (JMException e) {
+         e.printStackTrace();
+      }
+   }
+
+   private static LongAdder[] adders(int n) {
+      LongAdder[] adders = new LongAdder[n];
+      for (int i = 0; i < n; i++) {
+         adders[i] = new LongAdder();
+      }
+      return adders;
+   }
+
+   /**
+    * @return the start time to pass to stop(), or 0 while disabled.
+    */
+   public long start() {
+      return enabled ? System.nanoTime() : 0;
+   }
+
+   /**
+    * Records the time since start(); a start of 0 is ignored.
+    */
+   public void stop(Phase phase, long start) {
+      if (start != 0) {
+         record(phase, System.nanoTime() - start);
+      }
+   }
+
+   public void record(Phase phase, long nanos) {
+      if (enabled) {
+         phaseCalls[phase.ordinal()].increment();
+         phaseNanos[phase.ordinal()].add(nanos);
+         phaseMax[phase.ordinal()].accumulate(nanos);
+      }
+   }
+
+   public void count(Counter counter, long n) {
+      if (enabled) {
+         counters[counter.ordinal()].add(n);
+      }
+   }
+
+   @Override
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   @Override
+   public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+   }
+
+   @Override
+   public Map<String, Long> getPhaseCalls() {
+      Map<String, Long> result = new LinkedHashMap<String, Long>();
+      for (Phase p : Phase.values()) {
+         result.put(nameOf(p), phaseCalls[p.ordinal()].sum());
+      }
+      return result;
+   }
+
+   @Override
+   public Map<String, Long> getPhaseTotalMillis() {
+      Map<String, Long> result = new LinkedHashMap<String, Long>();
+      for (Phase p : Phase.values()) {
+         result.put(nameOf(p), phaseNanos[p.ordinal()].sum() / 1000000);
+      }
+      return result;
+   }
+
+   @Override
+   public Map<String, Long> getPhaseMaxMillis() {
+      Map<String, Long> result = new LinkedHashMap<String, Long>();
+      for (Phase p : Phase.values()) {
+         result.put(nameOf(p), phaseMax[p.ordinal()].get() / 1000000);
+      }
+      return result;
+   }
+
+   @Override
+   public Map<String, Long> getCounters() {
+      Map<String, Long> result = new LinkedHashMap<String, Long>();
+      for (Counter c : Counter.values()) {
+         result.put(nameOf(c), counters[c.ordinal()].sum());
+      }
+      return result;
+   }
+
+   @Override
+   public void reset() {
+      for (int i = 0; i < phaseCalls.length; i++) {
+         phaseCalls[i].reset();
+         phaseNanos[i].reset();
+         phaseMax[i].reset();
+      }
+      for (LongAdder counter : counters) {
+         counter.reset();
+      }
+   }
+
+   @Override
+   public String dump(String fileName) {
+      File file = new File(fileName);
+      try {
+         dump(file);
+         return file.getAbsolutePath();
+      } catch (IOException e) {
+         e.printStackTrace();
+         return e.toString();
+      }
+   }
+
+   /**
+    * Writes one tab-separated line per phase, "phase name calls totalMs maxMs", and per
+    * counter, "counter name value".
+    */
+   public void dump(File file) throws IOException {
+      try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+         w.println("# CDProjectOrange metrics, " + new Date() + (enabled ? "" : ", collection disabled"));
+         for (Phase p : Phase.values()) {
+            w.printf("phase\t%s\t%d\t%.1f\t%.1f%n", nameOf(p), phaseCalls[p.ordinal()].sum(), //
+                  phaseNanos[p.ordinal()].sum() / 1e6, phaseMax[p.ordinal()].get() / 1e6);
+         }
+         for (Counter c : Counter.values()) {
+            w.printf("counter\t%s\t%d%n", nameOf(c), counters[c.ordinal()].sum());
+         }
+      }
+   }
+
+   /**
+    * UNITS_PARSED becomes unitsParsed.
+    */
+   private static String nameOf(Enum<?> e) {
+      StringBuilder sb = new StringBuilder();
+      for (String word : e.name().toLowerCase().split("_")) {
+         sb.append(sb.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+      }
+      return sb.toString();
+   }
+}
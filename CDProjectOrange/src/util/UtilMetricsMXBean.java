@@ -0,0 +1,32 @@
+package util;
+
+import java.util.Map;
+
+/**
+ * The JMX view of UtilMetrics, registered as "CDProjectOrange:type=Metrics".
+ */
+public interface UtilMetricsMXBean {
+   boolean isEnabled();
+
+   void setEnabled(boolean enabled);
+
+   /** The number of timed runs per phase. */
+   Map<String, Long> getPhaseCalls();
+
+   /** The total time per phase, summed over threads. */
+   Map<String, Long> getPhaseTotalMillis();
+
+   /** The longest single run per phase. */
+   Map<String, Long> getPhaseMaxMillis();
+
+   Map<String, Long> getCounters();
+
+   void reset();
+
+   /**
+    * Writes the metrics to the file.
+    *
+    * @return the absolute path of the file, or the error if it could not be written.
+    */
+   String dump(String fileName);
+}
@@ -1,5 +1,9 @@
 package util;
 
+import java.util.Collection;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.JavaModelException;
@@ -9,8 +13,31 @@ import org.eclipse.text.edits.TextEdit;
 import org.eclipse.ui.PlatformUI;
 
 public class UtilPlatform {
+   public static final String PLUGIN_ID = "CDProjectOrange";
+
+   /**
+    * An error status of this plug-in, for a job or a CoreException to report a failure.
+    */
+   public static IStatus errorStatus(String message, Throwable e) {
+      return new Status(IStatus.ERROR, PLUGIN_ID, message, e);
+   }
 
    public static void indentAndSave(ICompilationUnit cu) {
+      indent(cu);
+      PlatformUI.getWorkbench().saveAllEditors(false);
+   }
+
+   /**
+    * Formats every unit once and saves the editors a single time at the end.
+    */
+   public static void indentAndSave(Collection<ICompilationUnit> cus) {
+      for (ICompilationUnit cu : cus) {
+         indent(cu);
+      }
+      PlatformUI.getWorkbench().saveAllEditors(false);
+   }
+
+   private static void indent(ICompilationUnit cu) {
       CodeFormatter formatter = ToolFactory.createCodeFormatter(null);
       ISourceRange range;
       try {
@@ -22,6 +49,5 @@ public class UtilPlatform {
       } catch (JavaModelException e) {
          e.printStackTrace();
       }
-      PlatformUI.getWorkbench().saveAllEditors(false);
    }
 }
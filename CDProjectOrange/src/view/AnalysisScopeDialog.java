@@ -0,0 +1,104 @@
+/*
+ * @(#) AnalysisScopeDialog.java
+ *
+ */
+package view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+import analysis.AnalysisScope;
+
+/**
+ * Edits an analysis scope: the checked projects, and comma-separated source folders,
+ * package prefixes and include and exclude globs. The scope is changed only on OK.
+ */
+public class AnalysisScopeDialog extends Dialog {
+   private final AnalysisScope scope;
+   private final List<String> projectNames;
+   private Table projectTable;
+   private Text sourceRootsText, packagesText, includesText, excludesText;
+
+   /**
+    * @param projectNames the Java projects of the workspace to choose from.
+    */
+   public AnalysisScopeDialog(Shell parentShell, AnalysisScope scope, List<String> projectNames) {
+      super(parentShell);
+      this.scope = scope;
+      this.projectNames = projectNames;
+   }
+
+   @Override
+   protected void configureShell(Shell shell) {
+      super.configureShell(shell);
+      shell.setText("Analysis Scope");
+   }
+
+   @Override
+   protected Control createDialogArea(Composite parent) {
+      Composite area = (Composite) super.createDialogArea(parent);
+      area.setLayout(new GridLayout(2, false));
+
+      Label prjLabel = new Label(area, SWT.NONE);
+      prjLabel.setText("Projects (none checked analyzes all):");
+      prjLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+      projectTable = new Table(area, SWT.CHECK | SWT.BORDER | SWT.V_SCROLL);
+      GridData tableData = new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1);
+      tableData.heightHint = 120;
+      projectTable.setLayoutData(tableData);
+      for (String prjName : projectNames) {
+         TableItem item = new TableItem(projectTable, SWT.NONE);
+         item.setText(prjName);
+         item.setChecked(scope.getProjects().contains(prjName));
+      }
+
+      sourceRootsText = addText(area, "Source folders:", scope.getSourceRoots());
+      packagesText = addText(area, "Package prefixes:", scope.getPackagePrefixes());
+      includesText = addText(area, "Include globs:", scope.getIncludes());
+      excludesText = addText(area, "Exclude globs:", scope.getExcludes());
+
+      Label hint = new Label(area, SWT.WRAP);
+      hint.setText("Comma-separated, empty for no restriction. Paths are workspace-relative, "
+            + "e.g. MyProject/src and MyProject/src/**/*Test.java.");
+      GridData hintData = new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1);
+      hintData.widthHint = 400;
+      hint.setLayoutData(hintData);
+      return area;
+   }
+
+   private static Text addText(Composite area, String label, List<String> values) {
+      new Label(area, SWT.NONE).setText(label);
+      Text text = new Text(area, SWT.BORDER);
+      text.setText(AnalysisScope.join(values));
+      text.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+      return text;
+   }
+
+   @Override
+   protected void okPressed() {
+      List<String> checked = new ArrayList<String>();
+      for (TableItem item : projectTable.getItems()) {
+         if (item.getChecked()) {
+            checked.add(item.getText());
+         }
+      }
+      scope.setProjects(checked);
+      scope.setSourceRoots(AnalysisScope.split(sourceRootsText.getText()));
+      scope.setPackagePrefixes(AnalysisScope.split(packagesText.getText()));
+      scope.setIncludes(AnalysisScope.split(includesText.getText()));
+      scope.setExcludes(AnalysisScope.split(excludesText.getText()));
+      super.okPressed();
+   }
+}
@@ -4,50 +4,101 @@
  */
 package view;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.EventObject;
 import java.util.List;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.draw2d.ColorConstants;
+import org.eclipse.draw2d.geometry.Dimension;
 import org.eclipse.e4.ui.di.Focus;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.MouseWheelListener;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.zest.core.viewers.GraphViewer;
 import org.eclipse.zest.core.widgets.Graph;
 import org.eclipse.zest.core.widgets.GraphNode;
-import org.eclipse.zest.layouts.LayoutStyles;
-import org.eclipse.zest.layouts.algorithms.RadialLayoutAlgorithm;
-import org.eclipse.zest.layouts.algorithms.TreeLayoutAlgorithm;
+import org.osgi.framework.FrameworkUtil;
 
+import analysis.AnalysisJob;
+import analysis.AnalysisScope;
 import analysis.CloneAnalyzer;
+import analysis.CloneDetectionJob;
+import analysis.CloneDetector;
+import analysis.DeclarationIndex;
+import analysis.FeatureEnvyAnalyzer;
+import analysis.FeatureEnvyJob;
+import analysis.IncrementalModelUpdater;
 import analysis.MoveMethodAnalyzer;
+import analysis.MoveMethodQueue;
 import analysis.ProjectAnalyzer;
 import analysis.ViewNodeAnalyzer;
+import graph.export.GModelExporter;
+import graph.layout.GFixedLayoutAlgorithm;
+import graph.layout.GForceLayout;
+import graph.layout.GLayoutEngine;
+import graph.layout.GLayoutJob;
+import graph.layout.GLayoutModel;
+import graph.layout.GTreeLayout;
 import graph.model.GClassNode;
 import graph.model.GMethodNode;
+import graph.model.GModel;
 import graph.model.GNode;
 import graph.model.GNodeType;
 import graph.model.GPackageNode;
 import graph.provider.GLabelProvider;
 import graph.provider.GModelProvider;
 import graph.provider.GNodeContentProvider;
+import util.UtilMetrics;
 import util.UtilMsg;
 import util.UtilNode;
+import util.UtilPlatform;
 
 public class MyGraphView {
    public static final String VIEW_ID = "CDProjectOrange.partdescriptor.simplezestview";
+   private static final int MAX_SUGGESTIONS = 10;
+   private static final String SNAPSHOT_FILE = "model.snapshot";
 
    private GraphViewer gViewer;
+   private GNodeContentProvider contentProvider;
+   private GLabelProvider labelProvider;
    private int layout = 0;
+   private boolean radialLayout = false;
+   private volatile boolean structureOnly = false;
+   private final GTreeLayout treeLayout = new GTreeLayout();
+   private final GForceLayout forceLayout = new GForceLayout();
+   private GLayoutEngine layoutEngine = treeLayout;
+   private GLayoutJob layoutJob = null;
    private Menu mPopupMenu = null;
    private MenuItem menuItemMoveMethod = null, menuItemRefresh = null, menuOpenNodeView = null, menuClone = null;
+   private MenuItem menuItemIncremental = null, menuItemLazy = null, menuItemCollapseAll = null;
+   private MenuItem menuItemQueueMove = null, menuItemApplyMoves = null, menuItemClearMoves = null;
+   private MenuItem menuItemSuggestMoves = null, menuItemFindClones = null, menuItemExport = null;
+   private MenuItem menuItemMetrics = null, menuItemDumpMetrics = null, menuItemStructureOnly = null;
+   private MenuItem menuItemScope = null, menuItemCloneSelected = null;
+   private FeatureEnvyJob featureEnvyJob = null;
+   private volatile CloneDetectionJob cloneJob = null;
+   private MoveMethodQueue moveQueue = new MoveMethodQueue();
+   private IncrementalModelUpdater incrementalUpdater = null;
+   private AnalysisJob analysisJob = null;
    private GraphNode selectedSrcGraphNode = null, selectedDstGraphNode = null, lastSelectedGraphNode = null;
    private GraphNode prevSelectedDstGraphNode = null;
 
@@ -57,10 +108,12 @@ public class MyGraphView {
    @PostConstruct
    public void createControls(Composite parent) {
       gViewer = new GraphViewer(parent, SWT.BORDER);
-      gViewer.setContentProvider(new GNodeContentProvider());
-      gViewer.setLabelProvider(new GLabelProvider());
-      gViewer.setLayoutAlgorithm(new TreeLayoutAlgorithm(LayoutStyles.NO_LAYOUT_NODE_RESIZING), true);
-      gViewer.applyLayout();
+      contentProvider = new GNodeContentProvider();
+      gViewer.setContentProvider(contentProvider);
+      labelProvider = new GLabelProvider(contentProvider);
+      gViewer.setLabelProvider(labelProvider);
+      // Positions are computed by layout jobs; the Zest layout only keeps nodes in place.
+      gViewer.setLayoutAlgorithm(new GFixedLayoutAlgorithm(), false);
 
       addPoupMenu();
       addMouseListenerGraphViewer();
@@ -74,6 +127,17 @@ public class MyGraphView {
       menuItemMoveMethod.setText("Move Method");
       addSelectionListenerMenuItemMoveMethod();
 
+      menuItemQueueMove = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemQueueMove.setText("Queue Move Method");
+      menuItemApplyMoves = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemClearMoves = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemClearMoves.setText("Clear Queued Moves");
+      addSelectionListenerMenuItemMoveQueue();
+
+      menuItemSuggestMoves = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemSuggestMoves.setText("Suggest Move Destinations");
+      addSelectionListenerMenuItemSuggestMoves();
+
       menuItemRefresh = new MenuItem(mPopupMenu, SWT.CASCADE);
       menuItemRefresh.setText("Refresh");
       addSelectionListenerMenuItemRefresh();      
@@ -84,7 +148,41 @@ public class MyGraphView {
       
       menuClone = new MenuItem(mPopupMenu, SWT.CASCADE);
       menuClone.setText("Clone Method");
+      menuItemCloneSelected = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemCloneSelected.setText("Clone Selected Methods");
       addSelectionListenerMenuItemClone();
+
+      menuItemFindClones = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemFindClones.setText("Find Clones");
+      addSelectionListenerMenuItemFindClones();
+
+      menuItemScope = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemScope.setText("Analysis Scope...");
+      addSelectionListenerMenuItemScope();
+
+      menuItemStructureOnly = new MenuItem(mPopupMenu, SWT.CHECK);
+      menuItemStructureOnly.setText("Structure Only");
+      addSelectionListenerMenuItemStructureOnly();
+
+      menuItemIncremental = new MenuItem(mPopupMenu, SWT.CHECK);
+      menuItemIncremental.setText("Incremental Update");
+      addSelectionListenerMenuItemIncremental();
+
+      menuItemLazy = new MenuItem(mPopupMenu, SWT.CHECK);
+      menuItemLazy.setText("Lazy Expansion");
+      menuItemCollapseAll = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemCollapseAll.setText("Collapse All");
+      addSelectionListenerMenuItemLazy();
+
+      menuItemExport = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemExport.setText("Export Graph...");
+      addSelectionListenerMenuItemExport();
+
+      menuItemMetrics = new MenuItem(mPopupMenu, SWT.CHECK);
+      menuItemMetrics.setText("Collect Metrics");
+      menuItemDumpMetrics = new MenuItem(mPopupMenu, SWT.CASCADE);
+      menuItemDumpMetrics.setText("Dump Metrics...");
+      addSelectionListenerMenuItemMetrics();
    }
 
    private void addMouseListenerGraphViewer() {
@@ -165,9 +263,139 @@ public class MyGraphView {
                   UtilNode.resetPackageNode(prevSelectedDstGraphNode, prevSelectedGPackageNode);//
                } 
             }
+            if (contentProvider.isLazy() && lastSelectedNode != null && contentProvider.expand(lastSelectedNode)) {
+               refreshLazyGraph();
+            }
          }
       };
       gViewer.getControl().addMouseListener(mouseAdapter);
+
+      // Ctrl + mouse wheel zooms into the selected node by expanding it, and out by collapsing it.
+      gViewer.getControl().addMouseWheelListener(new MouseWheelListener() {
+         @Override
+         public void mouseScrolled(MouseEvent e) {
+            if (!contentProvider.isLazy() || lastSelectedNode == null || (e.stateMask & SWT.CTRL) == 0) {
+               return;
+            }
+            boolean changed = (e.count > 0) ? contentProvider.expand(lastSelectedNode) : contentProvider.collapse(lastSelectedNode);
+            if (changed) {
+               refreshLazyGraph();
+            }
+         }
+      });
+   }
+
+   private void addSelectionListenerMenuItemLazy() {
+      menuItemCollapseAll.setEnabled(false);
+      menuItemLazy.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            contentProvider.setLazy(menuItemLazy.getSelection());
+            menuItemCollapseAll.setEnabled(menuItemLazy.getSelection());
+            refreshLazyGraph();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+      menuItemCollapseAll.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            contentProvider.collapseAll();
+            refreshLazyGraph();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   /**
+    * Streams the whole model, not only the visible nodes, to a file in the format of its extension.
+    */
+   private void addSelectionListenerMenuItemExport() {
+      menuItemExport.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            FileDialog dialog = new FileDialog(gViewer.getControl().getShell(), SWT.SAVE);
+            dialog.setFilterExtensions(new String[] { "*.graphml", "*.dot", "*.ndjson" });
+            dialog.setOverwrite(true);
+            String fileName = dialog.open();
+            if (fileName == null) {
+               return;
+            }
+            GModelExporter.Format format = GModelExporter.Format.forFile(fileName);
+            if (format == null) {
+               UtilMsg.openWarning("Please choose a .graphml, .dot or .ndjson file.");
+               return;
+            }
+            GModel model = GModelProvider.instance().getModel();
+            new Job("Exporting graph") {
+               @Override
+               protected IStatus run(IProgressMonitor monitor) {
+                  try {
+                     new GModelExporter(model).export(Paths.get(fileName), format);
+                  } catch (IOException ex) {
+                     // Shown by the Jobs framework.
+                     return UtilPlatform.errorStatus("Failed to export the graph to " + fileName, ex);
+                  }
+                  return Status.OK_STATUS;
+               }
+            }.schedule();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   private void addSelectionListenerMenuItemMetrics() {
+      menuItemMetrics.setSelection(UtilMetrics.instance().isEnabled());
+      menuItemMetrics.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            UtilMetrics.instance().setEnabled(menuItemMetrics.getSelection());
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+      menuItemDumpMetrics.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            // Collection may have been switched through JMX in the meantime.
+            menuItemMetrics.setSelection(UtilMetrics.instance().isEnabled());
+            FileDialog dialog = new FileDialog(gViewer.getControl().getShell(), SWT.SAVE);
+            dialog.setFilterExtensions(new String[] { "*.tsv" });
+            dialog.setOverwrite(true);
+            String fileName = dialog.open();
+            if (fileName == null) {
+               return;
+            }
+            try {
+               UtilMetrics.instance().dump(new File(fileName));
+            } catch (IOException ex) {
+               ex.printStackTrace();
+               UtilMsg.openWarning("Could not write the metrics: " + ex.getMessage());
+            }
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   /**
+    * Re-reads the visible nodes after an expansion changed and lays them out again.
+    */
+   private void refreshLazyGraph() {
+      gViewer.refresh();
+      scheduleLayout();
    }
 
    private void changeColorDDClikedNode(GNode node) {
@@ -221,6 +449,110 @@ public class MyGraphView {
       menuItemMoveMethod.addSelectionListener(menuItemListenerMoveMethod);
    }
 
+   private void addSelectionListenerMenuItemMoveQueue() {
+      updateMoveQueueMenuItems();
+      menuItemQueueMove.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            if (!(selectedGMethodNode != null && selectedGMethodNode.getNodeType().equals(GNodeType.UserSelection) && //
+                  selectedGClassNode != null && selectedGClassNode.getNodeType().equals(GNodeType.UserDoubleClicked))) {
+               UtilMsg.openWarning("Please select class and method nodes. " //
+                     + "Select a class node by double-click and select a method node by single-click");
+               return;
+            }
+            if (!moveQueue.add((GMethodNode) selectedGMethodNode, (GClassNode) selectedGClassNode)) {
+               UtilMsg.openWarning("The method is already queued or the destination is its own class.");
+               return;
+            }
+            resetSelectedSrcGraphNode();
+            UtilNode.resetDstNode(selectedDstGraphNode, selectedGClassNode);
+            updateMoveQueueMenuItems();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+      menuItemApplyMoves.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            int moved = moveQueue.apply();
+            updateMoveQueueMenuItems();
+            syncZestViewAndJavaEditor();
+            UtilMsg.openWarning(moved + " method(s) have been moved.");
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+      menuItemClearMoves.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            moveQueue.clear();
+            updateMoveQueueMenuItems();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   private void updateMoveQueueMenuItems() {
+      menuItemApplyMoves.setText("Apply Queued Moves (" + moveQueue.size() + ")");
+      menuItemApplyMoves.setEnabled(moveQueue.size() > 0);
+      menuItemClearMoves.setEnabled(moveQueue.size() > 0);
+   }
+
+   private void addSelectionListenerMenuItemSuggestMoves() {
+      menuItemSuggestMoves.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            if (featureEnvyJob != null) {
+               featureEnvyJob.cancel();
+            }
+            featureEnvyJob = new FeatureEnvyJob(FeatureEnvyAnalyzer.instance(), new Runnable() {
+               @Override
+               public void run() {
+                  showSuggestions();
+               }
+            });
+            featureEnvyJob.schedule();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   /**
+    * Highlights the methods that envy another class most, together with their best destinations.
+    */
+   private void showSuggestions() {
+      if (gViewer.getControl().isDisposed()) {
+         return;
+      }
+      gViewer.getControl().getDisplay().asyncExec(new Runnable() {
+         @Override
+         public void run() {
+            if (gViewer.getControl().isDisposed()) {
+               return;
+            }
+            GModel model = contentProvider.getModel();
+            List<GNode> suggested = new ArrayList<GNode>();
+            for (FeatureEnvyAnalyzer.Suggestion s : FeatureEnvyAnalyzer.instance().getTopSuggestions(model, MAX_SUGGESTIONS)) {
+               GNode method = model.getNode(s.methodKey), destination = model.getNode(s.classKey);
+               suggested.add(method);
+               suggested.add(destination);
+            }
+            labelProvider.setSuggestedNodes(suggested);
+            gViewer.refresh(true);
+         }
+      });
+   }
+
    private void addSelectionListenerMenuItemRefresh() {
       SelectionListener menuItemListenerRefresh = new SelectionListener() {
          @Override
@@ -249,7 +581,8 @@ public class MyGraphView {
 	            	nodeAnalyzer.setClassNode(((GMethodNode) selectedGMethodNode).getClassName());
 	            	nodeAnalyzer.setMethodNode(((GMethodNode) selectedGMethodNode).getName());
 	            	nodeAnalyzer.analyze();
-	            	gViewer.setInput(GModelProvider.instance().getNodes());
+	            	gViewer.setInput(GModelProvider.instance().getModel());
+	            	scheduleLayout();
 	            }
 	         }
 
@@ -263,13 +596,12 @@ public class MyGraphView {
 	      SelectionListener menuItemListenerClone = new SelectionListener() {
 	         @Override
 	         public void widgetSelected(SelectionEvent e) {
-	            CloneAnalyzer cloneAnalyzer = new CloneAnalyzer();
-	            if (lastSelectedNode instanceof GMethodNode) {
-	            	System.out.println("[DBG] MenuItem Clone Method");
-	            	cloneAnalyzer.setMethodToBeCloned((GMethodNode) selectedGMethodNode);
+	            if (!(selectedGMethodNode instanceof GMethodNode)) {
+	               UtilMsg.openWarning("Please select a method node by single-click.");
+	               return;
 	            }
+	            CloneAnalyzer cloneAnalyzer = new CloneAnalyzer();
 	            cloneAnalyzer.setMethodToBeCloned((GMethodNode) selectedGMethodNode);
-	            cloneAnalyzer.analyze();
 	            cloneAnalyzer.cloneMethod();
 	            resetSelectedSrcGraphNode();
 	            UtilNode.resetDstNode(selectedDstGraphNode, selectedGClassNode);
@@ -286,8 +618,151 @@ public class MyGraphView {
 	         }
 	      };
 	      menuClone.addSelectionListener(menuItemListenerClone);
+	      menuItemCloneSelected.addSelectionListener(new SelectionListener() {
+	         @Override
+	         public void widgetSelected(SelectionEvent e) {
+	            // Every method node in the graph selection (Ctrl+click) is cloned in one operation.
+	            List<GMethodNode> mNodes = new ArrayList<GMethodNode>();
+	            for (Object item : gViewer.getGraphControl().getSelection()) {
+	               if (item instanceof GraphNode && ((GraphNode) item).getData() instanceof GMethodNode) {
+	                  mNodes.add((GMethodNode) ((GraphNode) item).getData());
+	               }
+	            }
+	            if (mNodes.isEmpty() && selectedGMethodNode instanceof GMethodNode) {
+	               mNodes.add((GMethodNode) selectedGMethodNode);
+	            }
+	            if (mNodes.isEmpty()) {
+	               UtilMsg.openWarning("Please select method nodes by Ctrl+click.");
+	               return;
+	            }
+	            List<String> names = new CloneAnalyzer().cloneMethods(mNodes);
+	            resetSelectedSrcGraphNode();
+	            syncZestViewAndJavaEditor();
+	            if (!names.isEmpty()) {
+	               UtilMsg.openWarning(names.size() + " method(s) have been cloned: " + String.join(", ", names));
+	            }
+	         }
+
+	         @Override
+	         public void widgetDefaultSelected(SelectionEvent e) {
+	         }
+	      });
 	   }
  
+   private void addSelectionListenerMenuItemFindClones() {
+      menuItemFindClones.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            if (cloneJob != null) {
+               cloneJob.cancel();
+            }
+            cloneJob = new CloneDetectionJob(new CloneDetector(), job -> {
+               // A search started meanwhile replaces this one.
+               if (job == cloneJob) {
+                  showCloneGroups(job.getGroups());
+               }
+            });
+            cloneJob.schedule();
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   /**
+    * Colors the methods of each clone group alike; groups whose methods are not in the graph are skipped.
+    */
+   private void showCloneGroups(final List<CloneDetector.CloneGroup> groups) {
+      if (gViewer.getControl().isDisposed()) {
+         return;
+      }
+      gViewer.getControl().getDisplay().asyncExec(new Runnable() {
+         @Override
+         public void run() {
+            if (gViewer.getControl().isDisposed()) {
+               return;
+            }
+            GModel model = contentProvider.getModel();
+            List<int[]> shown = new ArrayList<int[]>();
+            for (CloneDetector.CloneGroup g : groups) {
+               int inGraph = 0;
+               for (int key : g.methodKeys) {
+                  if (model.getNode(key) != null) {
+                     inGraph++;
+                  }
+               }
+               if (inGraph >= 2) {
+                  shown.add(g.methodKeys);
+               }
+            }
+            labelProvider.setCloneGroups(shown);
+            gViewer.refresh(true);
+         }
+      });
+   }
+
+   private void addSelectionListenerMenuItemScope() {
+      menuItemScope.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            AnalysisScope scope = AnalysisScope.instance();
+            AnalysisScopeDialog dialog = new AnalysisScopeDialog(gViewer.getControl().getShell(), scope, //
+                  AnalysisScope.javaProjectNames());
+            if (dialog.open() != Window.OK) {
+               return;
+            }
+            scope.save();
+            scheduleAnalysis(true);
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   private void addSelectionListenerMenuItemStructureOnly() {
+      menuItemStructureOnly.addSelectionListener(new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            structureOnly = menuItemStructureOnly.getSelection();
+            incrementalUpdater.setStructureOnly(structureOnly);
+            scheduleAnalysis(true);
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      });
+   }
+
+   private void addSelectionListenerMenuItemIncremental() {
+      incrementalUpdater = new IncrementalModelUpdater(new Runnable() {
+         @Override
+         public void run() {
+            publish(false);
+         }
+      });
+      incrementalUpdater.setScope(AnalysisScope.instance());
+      SelectionListener menuItemListenerIncremental = new SelectionListener() {
+         @Override
+         public void widgetSelected(SelectionEvent e) {
+            if (menuItemIncremental.getSelection()) {
+               incrementalUpdater.start();
+            } else {
+               incrementalUpdater.stop();
+            }
+         }
+
+         @Override
+         public void widgetDefaultSelected(SelectionEvent e) {
+         }
+      };
+      menuItemIncremental.addSelectionListener(menuItemListenerIncremental);
+   }
+
    private void resetSelectedSrcGraphNode() {
       if (selectedSrcGraphNode != null && selectedSrcGraphNode.isDisposed() == false) {
          selectedSrcGraphNode.setBorderWidth(0);
@@ -296,22 +771,157 @@ public class MyGraphView {
    }
 
    public void syncZestViewAndJavaEditor() {
+      scheduleAnalysis(false);
+   }
+
+   /**
+    * Analyzes the workspace in a background job. A job that is still running is canceled,
+    * and the viewer keeps showing the previous graph until the new one is published.
+    */
+   public void scheduleAnalysis(final boolean relayout) {
+      if (analysisJob != null) {
+         analysisJob.cancel();
+      }
       ProjectAnalyzer analyzer = new ProjectAnalyzer();
-      analyzer.analyze();
-      gViewer.setInput(GModelProvider.instance().getNodes());
+      analyzer.setBatchParsing(true).setParallelism(Runtime.getRuntime().availableProcessors());
+      analyzer.setStructureOnly(structureOnly).setScope(AnalysisScope.instance());
+      analyzer.setIndex(DeclarationIndex.instance());
+      analyzer.setSnapshot(new File(Platform.getStateLocation(FrameworkUtil.getBundle(MyGraphView.class)).toFile(), SNAPSHOT_FILE));
+      analysisJob = new AnalysisJob(analyzer, new Runnable() {
+         @Override
+         public void run() {
+            publish(relayout);
+         }
+      });
+      analysisJob.schedule();
+   }
+
+   /**
+    * Swaps the current model snapshot into the viewer on the display thread.
+    */
+   private void publish(final boolean relayout) {
+      final GModel published = GModelProvider.instance().getModel();
+      if (gViewer.getControl().isDisposed()) {
+         return;
+      }
+      gViewer.getControl().getDisplay().asyncExec(new Runnable() {
+         @Override
+         public void run() {
+            if (gViewer.getControl().isDisposed()) {
+               return;
+            }
+            long renderStart = UtilMetrics.instance().start();
+            if (relayout) {
+               update(published);
+            } else {
+               gViewer.setInput(published);
+               scheduleLayout();
+            }
+            UtilMetrics.instance().stop(UtilMetrics.Phase.RENDER, renderStart);
+         }
+      });
    }
 
    public void update() {
-      gViewer.setInput(GModelProvider.instance().getNodes());
-      if (layout % 2 == 0)
-         gViewer.setLayoutAlgorithm(new TreeLayoutAlgorithm(LayoutStyles.NO_LAYOUT_NODE_RESIZING), true);
-      else
-         gViewer.setLayoutAlgorithm(new RadialLayoutAlgorithm(LayoutStyles.NO_LAYOUT_NODE_RESIZING), true);
+      update(GModelProvider.instance().getModel());
+   }
+
+   private void update(GModel model) {
+      gViewer.setInput(model);
+      // Cycles through tree, radial and force-directed layouts.
+      radialLayout = (layout % 3 == 1);
+      layoutEngine = (layout % 3 == 2) ? forceLayout : treeLayout;
       layout++;
+      scheduleLayout();
+   }
+
+   /**
+    * Lays out the nodes currently in the viewer on a background thread and moves them
+    * in one batch. Positions are cached by node id, so unchanged subtrees stay put.
+    */
+   private void scheduleLayout() {
+      if (layoutJob != null) {
+         layoutJob.cancel();
+      }
+      final GLayoutJob job = new GLayoutJob(captureLayoutModel(), layoutEngine, radialLayout, new Runnable() {
+         @Override
+         public void run() {
+            applyPositions();
+         }
+      });
+      layoutJob = job;
+      job.schedule();
+   }
+
+   private GLayoutModel captureLayoutModel() {
+      List<?> graphNodes = gViewer.getGraphControl().getNodes();
+      List<String> ids = new ArrayList<String>(graphNodes.size());
+      List<String> parentIds = new ArrayList<String>(graphNodes.size());
+      double[] widths = new double[graphNodes.size()];
+      double[] heights = new double[graphNodes.size()];
+      for (int i = 0; i < graphNodes.size(); i++) {
+         GraphNode graphNode = (GraphNode) graphNodes.get(i);
+         GNode node = (GNode) graphNode.getData();
+         ids.add(node.getId());
+         parentIds.add(node.getParent());
+         Dimension size = graphNode.getSize();
+         widths[i] = size.width;
+         heights[i] = size.height;
+      }
+      return new GLayoutModel(ids, parentIds, widths, heights);
+   }
+
+   private void applyPositions() {
+      if (gViewer.getControl().isDisposed()) {
+         return;
+      }
+      gViewer.getControl().getDisplay().asyncExec(new Runnable() {
+         @Override
+         public void run() {
+            GLayoutJob job = layoutJob;
+            if (gViewer.getControl().isDisposed() || job == null || job.getPositions() == null) {
+               return;
+            }
+            long renderStart = UtilMetrics.instance().start();
+            Graph graph = gViewer.getGraphControl();
+            graph.setRedraw(false);
+            try {
+               for (Object o : graph.getNodes()) {
+                  GraphNode graphNode = (GraphNode) o;
+                  double[] p = job.getPositions().get(((GNode) graphNode.getData()).getId());
+                  if (p != null) {
+                     graphNode.setLocation(p[0], p[1]);
+                  }
+               }
+            } finally {
+               graph.setRedraw(true);
+            }
+            UtilMetrics.instance().stop(UtilMetrics.Phase.RENDER, renderStart);
+         }
+      });
    }
 
    @Focus
    public void setFocus() {
       this.gViewer.getGraphControl().setFocus();
    }
+
+   @PreDestroy
+   public void dispose() {
+      if (analysisJob != null) {
+         analysisJob.cancel();
+      }
+      if (layoutJob != null) {
+         layoutJob.cancel();
+      }
+      if (featureEnvyJob != null) {
+         featureEnvyJob.cancel();
+      }
+      if (cloneJob != null) {
+         cloneJob.cancel();
+      }
+      if (incrementalUpdater != null) {
+         incrementalUpdater.stop();
+      }
+   }
 }
@@ -0,0 +1,129 @@
+/*
+ * @(#) CallGraphVisitor.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package visitor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IPackageBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+
+import graph.model.GCallBuffer;
+import graph.model.GSymbolTable;
+
+/**
+ * Records method-to-method call edges from the resolved bindings of method invocations,
+ * super method invocations and instance creations. Method keys are derived the same way
+ * as in DeclarationVisitor, so the edges connect the method nodes that it creates. Calls
+ * into classes that are not part of the analyzed source are skipped.
+ * <p>
+ * The visitor touches only its buffer and the symbol table, so units can be visited
+ * concurrently with one buffer per thread.
+ */
+public class CallGraphVisitor extends ASTVisitor {
+	private final GCallBuffer calls;
+	private final GSymbolTable symbols = GSymbolTable.instance();
+	private final String defaultPrjName;
+	private final Deque<Integer> callers = new ArrayDeque<Integer>();
+	private int resolvedBindings = 0;
+
+	public CallGraphVisitor(GCallBuffer calls) {
+		this(calls, null);
+	}
+
+	/**
+	 * @param defaultPrjName the project name used when the bindings have no Java element,
+	 *                       as for units parsed outside the workspace.
+	 */
+	public CallGraphVisitor(GCallBuffer calls, String defaultPrjName) {
+		this.calls = calls;
+		this.defaultPrjName = defaultPrjName;
+	}
+
+	/**
+	 * The number of method and constructor bindings resolved so far.
+	 */
+	public int getResolvedBindings() {
+		return resolvedBindings;
+	}
+
+	@Override
+	public boolean visit(MethodDeclaration methodDecl) {
+		IMethodBinding rBinding = methodDecl.resolveBinding();
+		if (rBinding != null) {
+			resolvedBindings++;
+		}
+		callers.push(rBinding == null ? GSymbolTable.NO_KEY : methodKey(rBinding));
+		return super.visit(methodDecl);
+	}
+
+	@Override
+	public void endVisit(MethodDeclaration methodDecl) {
+		callers.pop();
+	}
+
+	@Override
+	public boolean visit(MethodInvocation node) {
+		addCall(node.resolveMethodBinding(), node);
+		return super.visit(node);
+	}
+
+	@Override
+	public boolean visit(SuperMethodInvocation node) {
+		addCall(node.resolveMethodBinding(), node);
+		return super.visit(node);
+	}
+
+	@Override
+	public boolean visit(ClassInstanceCreation node) {
+		addCall(node.resolveConstructorBinding(), node);
+		return super.visit(node);
+	}
+
+	private void addCall(IMethodBinding mBinding, ASTNode callSite) {
+		// Calls from field and static initializers have no method node to start from.
+		if (mBinding != null) {
+			resolvedBindings++;
+		}
+		if (callers.isEmpty() || callers.peek() == GSymbolTable.NO_KEY || mBinding == null) {
+			return;
+		}
+		IMethodBinding declBinding = mBinding.getMethodDeclaration();
+		ITypeBinding typeBinding = declBinding.getDeclaringClass();
+		if (typeBinding == null || !typeBinding.isFromSource() || typeBinding.getPackage() == null) {
+			return;
+		}
+		int calleeKey = methodKey(declBinding);
+		if (calleeKey != GSymbolTable.NO_KEY) {
+			calls.add(callers.peek(), calleeKey, callSite.getStartPosition());
+		}
+	}
+
+	private int methodKey(IMethodBinding mBinding) {
+		ITypeBinding typeBinding = mBinding.getDeclaringClass();
+		if (typeBinding.isAnonymous()) {
+			return GSymbolTable.NO_KEY;
+		}
+		IPackageBinding pkgBinding = typeBinding.getPackage();
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, projectName(pkgBinding)), pkgBinding.getName());
+		return symbols.key(symbols.key(pkgKey, typeBinding.getName()), mBinding.getName());
+	}
+
+	private String projectName(IPackageBinding pkgBinding) {
+		IJavaElement pkgElem = pkgBinding.getJavaElement();
+		return (pkgElem == null) ? defaultPrjName : pkgElem.getJavaProject().getElementName();
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * @(#) CloneFingerprintVisitor.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.BooleanLiteral;
+import org.eclipse.jdt.core.dom.CharacterLiteral;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IPackageBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.StringLiteral;
+
+import graph.model.GSymbolTable;
+
+/**
+ * Computes a clone fingerprint for the body of every method of a compilation unit. The
+ * body is flattened into one token per AST node on entry and one on exit, so that the
+ * sequence keeps the tree shape:
+ * <ul>
+ * <li>exact: the node types, operators, identifiers and literals; equal for Type-1 clones.
+ * <li>normalized: the node types and operators only; equal for Type-2 clones, which differ
+ * in identifiers, literals and types.
+ * <li>minHash: a MinHash signature of the normalized token 4-grams, which estimates their
+ * Jaccard similarity and finds Type-3 clones with added, removed or changed statements.
+ * </ul>
+ * Methods of anonymous classes are part of the enclosing method's body. Method keys are
+ * derived as in DeclarationVisitor.
+ */
+public class CloneFingerprintVisitor extends ASTVisitor {
+	public static final int MIN_HASH_SIZE = 32;
+	private static final int SHINGLE_SIZE = 4;
+	private static final long[] SEEDS = new long[MIN_HASH_SIZE];
+	static {
+		for (int h = 0; h < MIN_HASH_SIZE; h++) {
+			SEEDS[h] = mix(0x9E3779B97F4A7C15L * (h + 1));
+		}
+	}
+
+	public static class Fingerprint {
+		public final int    methodKey;
+		/** The number of AST nodes in the body. */
+		public final int    size;
+		public final long   exact, normalized;
+		public final long[] minHash;
+
+		Fingerprint(int methodKey, int size, long exact, long normalized, long[] minHash) {
+			this.methodKey = methodKey;
+			this.size = size;
+			this.exact = exact;
+			this.normalized = normalized;
+			this.minHash = minHash;
+		}
+	}
+
+	private final GSymbolTable symbols = GSymbolTable.instance();
+	private final String defaultPrjName;
+	private final int minSize;
+	private final List<Fingerprint> result = new ArrayList<Fingerprint>();
+
+	/**
+	 * @param defaultPrjName the project name used when the bindings have no Java element.
+	 * @param minSize        bodies with fewer AST nodes, such as accessors, are skipped.
+	 */
+	public CloneFingerprintVisitor(String defaultPrjName, int minSize) {
+		this.defaultPrjName = defaultPrjName;
+		this.minSize = minSize;
+	}
+
+	public List<Fingerprint> getFingerprints() {
+		return result;
+	}
+
+	@Override
+	public boolean visit(MethodDeclaration methodDecl) {
+		IMethodBinding rBinding = methodDecl.resolveBinding();
+		if (methodDecl.getBody() == null || rBinding == null || rBinding.getDeclaringClass().isAnonymous()) {
+			return true;
+		}
+		TokenCollector tokens = new TokenCollector();
+		methodDecl.getBody().accept(tokens);
+		if (tokens.nodes >= minSize) {
+			result.add(new Fingerprint(methodKey(rBinding), tokens.nodes, tokens.exact, tokens.normalized, //
+					minHash(tokens.shingles, tokens.shingleCount)));
+		}
+		// Nested anonymous class methods are already part of this body.
+		return false;
+	}
+
+	private static long[] minHash(long[] shingles, int count) {
+		long[] signature = new long[MIN_HASH_SIZE];
+		Arrays.fill(signature, Long.MAX_VALUE);
+		for (int i = 0; i < count; i++) {
+			for (int h = 0; h < MIN_HASH_SIZE; h++) {
+				long v = mix(shingles[i] ^ SEEDS[h]);
+				if (v < signature[h]) {
+					signature[h] = v;
+				}
+			}
+		}
+		return signature;
+	}
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Hashes the body in one pass: both sequence hashes and the rolling normalized 4-grams.
+	 */
+	private static class TokenCollector extends ASTVisitor {
+		int nodes = 0, shingleCount = 0;
+		long exact = 17, normalized = 17;
+		long[] shingles = new long[64];
+		final long[] window = new long[SHINGLE_SIZE];
+		int tokenCount = 0;
+
+		@Override
+		public boolean preVisit2(ASTNode node) {
+			// Comments of local and anonymous class members are not code.
+			if (node.getNodeType() == ASTNode.JAVADOC) {
+				return false;
+			}
+			nodes++;
+			long token = node.getNodeType() * 31L + operator(node);
+			add(token, token * 31 + text(node).hashCode());
+			return true;
+		}
+
+		@Override
+		public void postVisit(ASTNode node) {
+			if (node.getNodeType() != ASTNode.JAVADOC) {
+				add(-node.getNodeType(), -node.getNodeType());
+			}
+		}
+
+		private void add(long normalizedToken, long exactToken) {
+			exact = mix(exact * 31 + exactToken);
+			normalized = mix(normalized * 31 + normalizedToken);
+			window[tokenCount++ % SHINGLE_SIZE] = normalizedToken;
+			if (tokenCount >= SHINGLE_SIZE) {
+				long shingle = 0;
+				for (int i = 0; i < SHINGLE_SIZE; i++) {
+					shingle = shingle * 1_000_003L + window[(tokenCount + i) % SHINGLE_SIZE];
+				}
+				if (shingleCount == shingles.length) {
+					shingles = Arrays.copyOf(shingles, shingleCount * 2);
+				}
+				shingles[shingleCount++] = shingle;
+			}
+		}
+
+		private static int operator(ASTNode node) {
+			switch (node.getNodeType()) {
+			case ASTNode.INFIX_EXPRESSION:
+				return ((InfixExpression) node).getOperator().toString().hashCode();
+			case ASTNode.PREFIX_EXPRESSION:
+				return ((PrefixExpression) node).getOperator().toString().hashCode();
+			case ASTNode.POSTFIX_EXPRESSION:
+				return ((PostfixExpression) node).getOperator().toString().hashCode();
+			case ASTNode.ASSIGNMENT:
+				return ((Assignment) node).getOperator().toString().hashCode();
+			default:
+				return 0;
+			}
+		}
+
+		private static String text(ASTNode node) {
+			switch (node.getNodeType()) {
+			case ASTNode.SIMPLE_NAME:
+				return ((SimpleName) node).getIdentifier();
+			case ASTNode.NUMBER_LITERAL:
+				return ((NumberLiteral) node).getToken();
+			case ASTNode.STRING_LITERAL:
+				return ((StringLiteral) node).getEscapedValue();
+			case ASTNode.CHARACTER_LITERAL:
+				return ((CharacterLiteral) node).getEscapedValue();
+			case ASTNode.BOOLEAN_LITERAL:
+				return String.valueOf(((BooleanLiteral) node).booleanValue());
+			case ASTNode.PRIMITIVE_TYPE:
+				return ((PrimitiveType) node).getPrimitiveTypeCode().toString();
+			default:
+				return "";
+			}
+		}
+	}
+
+	private int methodKey(IMethodBinding mBinding) {
+		ITypeBinding typeBinding = mBinding.getDeclaringClass();
+		IPackageBinding pkgBinding = typeBinding.getPackage();
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, projectName(pkgBinding)), pkgBinding.getName());
+		return symbols.key(symbols.key(pkgKey, typeBinding.getName()), mBinding.getName());
+	}
+
+	private String projectName(IPackageBinding pkgBinding) {
+		IJavaElement pkgElem = pkgBinding.getJavaElement();
+		return (pkgElem == null) ? defaultPrjName : pkgElem.getJavaProject().getElementName();
+	}
+}
@@ -7,7 +7,11 @@
  */
 package visitor;
 
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.IPackageBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
@@ -16,13 +20,52 @@ import org.eclipse.jdt.core.dom.PackageDeclaration;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
 import graph.model.GClassNode;
-import graph.model.GConnection;
 import graph.model.GMethodNode;
+import graph.model.GModelBuilder;
 import graph.model.GNode;
 import graph.model.GPackageNode;
-import graph.provider.GModelProvider;
+import graph.model.GSymbolTable;
 
+/**
+ * Adds the packages, types and methods of a unit to the model. Names are taken from the
+ * bindings when the unit was parsed with them; otherwise they come from the syntax tree,
+ * the unit's project and the project name given to the constructor, so a unit parsed
+ * without bindings yields the same declaration hierarchy.
+ */
 public class DeclarationVisitor extends ASTVisitor {
+	private final GModelBuilder builder;
+	private final GSymbolTable symbols = GSymbolTable.instance();
+	private final String defaultPrjName;
+	private String unitKey, unitPrjName, unitPkgName;
+	private int resolvedBindings = 0;
+
+	public DeclarationVisitor(GModelBuilder builder) {
+		this(builder, null);
+	}
+
+	/**
+	 * @param defaultPrjName the project name used when the unit has no Java element,
+	 *                       as for units parsed outside the workspace.
+	 */
+	public DeclarationVisitor(GModelBuilder builder, String defaultPrjName) {
+		this.builder = builder;
+		this.defaultPrjName = defaultPrjName;
+	}
+
+	/**
+	 * The number of declaration bindings resolved so far.
+	 */
+	public int getResolvedBindings() {
+		return resolvedBindings;
+	}
+
+	public boolean visit(CompilationUnit compUnit) {
+		IJavaElement unitElem = compUnit.getJavaElement();
+		unitKey = (unitElem == null) ? null : unitElem.getHandleIdentifier();
+		unitPrjName = (unitElem == null) ? defaultPrjName : unitElem.getJavaProject().getElementName();
+		unitPkgName = (compUnit.getPackage() == null) ? "" : compUnit.getPackage().getName().getFullyQualifiedName();
+		return super.visit(compUnit);
+	}
 
 	public boolean visit(PackageDeclaration pkgDecl) {
 		insertPackageNode(pkgDecl);
@@ -31,11 +74,12 @@ public class DeclarationVisitor extends ASTVisitor {
 
 	private void insertPackageNode(PackageDeclaration pkgDecl) {
 		IPackageBinding rBinding = pkgDecl.resolveBinding();
-		String prjName = rBinding.getJavaElement().getJavaProject().getElementName();
+		String prjName = projectName(rBinding);
 		String nodeName = pkgDecl.getName().getFullyQualifiedName();
-		String id = prjName + "." + nodeName;
-		if (GModelProvider.instance().getNodeMap().containsKey(id) == false) {
-			addNode(new GPackageNode(id, nodeName, prjName));
+		int prjKey = symbols.key(GSymbolTable.NO_KEY, prjName);
+		int key = symbols.key(prjKey, nodeName);
+		if (builder.containsNode(key) == false) {
+			addNode(new GPackageNode(key, nodeName, prjKey));
 		}
 	}
 
@@ -46,7 +90,7 @@ public class DeclarationVisitor extends ASTVisitor {
 	@Override
 	public boolean visit(TypeDeclaration typeDecl) {
 		GNode typeNode = insertTypeNode(typeDecl);
-		GNode pkgGNode = GModelProvider.instance().getNodeMap().get(typeNode.getParent());
+		GNode pkgGNode = builder.getNode(typeNode.getParentKey());
 		if (pkgGNode == null) {
 			throw new RuntimeException();
 		}
@@ -56,12 +100,13 @@ public class DeclarationVisitor extends ASTVisitor {
 
 	private GNode insertTypeNode(TypeDeclaration typeDecl) {
 		ITypeBinding rBinding = typeDecl.resolveBinding();
-		String prjName = rBinding.getPackage().getJavaElement().getJavaProject().getElementName();
-		String pkgName = rBinding.getPackage().getName();
+		String prjName = projectName(rBinding == null ? null : rBinding.getPackage());
+		String pkgName = (rBinding == null) ? unitPkgName : rBinding.getPackage().getName();
 
 		String typeName = typeDecl.getName().getFullyQualifiedName();
-		String id = prjName + "." + pkgName + "." + typeName;
-		GClassNode n = new GClassNode(id, typeName, prjName + "." + pkgName);
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, prjName), pkgName);
+		GClassNode n = new GClassNode(symbols.key(pkgKey, typeName), typeName, pkgKey);
+		n.setPrjName(prjName);
 		n.setPkgName(pkgName);
 		return addNode(n);
 	}
@@ -69,7 +114,7 @@ public class DeclarationVisitor extends ASTVisitor {
 	@Override
 	public boolean visit(MethodDeclaration methodDecl) {
 		GMethodNode methodNode = (GMethodNode) insertMethodNode(methodDecl);
-		GNode typeNode = GModelProvider.instance().getNodeMap().get(methodNode.getParent());
+		GNode typeNode = builder.getNode(methodNode.getParentKey());
 		if (typeNode == null) {
 			throw new RuntimeException();
 		}
@@ -79,30 +124,55 @@ public class DeclarationVisitor extends ASTVisitor {
 
 	private GNode insertMethodNode(MethodDeclaration methodDecl) {
 		IMethodBinding rBinding = methodDecl.resolveBinding();
-		ITypeBinding typeBinding = rBinding.getDeclaringClass();
-		String prjName = typeBinding.getPackage().getJavaElement().getJavaProject().getElementName();
-		String pkgName = typeBinding.getPackage().getName();
-		String className = typeBinding.getName();
+		String prjName, pkgName, className;
+		if (rBinding == null) {
+			prjName = unitPrjName;
+			pkgName = unitPkgName;
+			className = declaringTypeName(methodDecl);
+		} else {
+			ITypeBinding typeBinding = rBinding.getDeclaringClass();
+			prjName = projectName(typeBinding.getPackage());
+			pkgName = typeBinding.getPackage().getName();
+			className = typeBinding.getName();
+		}
 
 		String methodName = methodDecl.getName().getFullyQualifiedName();
-		String parent = prjName + "." + pkgName + "." + className;
-		String id = parent + "." + methodName;
-		GMethodNode n = new GMethodNode(id, methodName, parent);
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, prjName), pkgName);
+		int classKey = symbols.key(pkgKey, className);
+		GMethodNode n = new GMethodNode(symbols.key(classKey, methodName), methodName, classKey);
 		n.setPrjName(prjName).setPkgName(pkgName).setClassName(className);
 		return addNode(n);
 	}
 
+	/**
+	 * The name the declaring type's binding would have; anonymous classes have none.
+	 */
+	private static String declaringTypeName(MethodDeclaration methodDecl) {
+		ASTNode parent = methodDecl.getParent();
+		return (parent instanceof AbstractTypeDeclaration) ? ((AbstractTypeDeclaration) parent).getName().getIdentifier() : "";
+	}
+
+	/**
+	 * Counts a resolved binding and returns the name of its project, or the unit's project without a binding.
+	 */
+	private String projectName(IPackageBinding pkgBinding) {
+		if (pkgBinding == null) {
+			return unitPrjName;
+		}
+		resolvedBindings++;
+		IJavaElement pkgElem = pkgBinding.getJavaElement();
+		return (pkgElem == null) ? defaultPrjName : pkgElem.getJavaProject().getElementName();
+	}
+
 	private void addConnection(GNode srcNode, GNode dstNode, int offset) {
-		String conId = srcNode.getId() + dstNode.getId();
-		String conLabel = "offset: " + offset;
-		GConnection con = new GConnection(conId, conLabel, srcNode, dstNode);
-		GModelProvider.instance().getConnections().add(con);
-		srcNode.getConnectedTo().add(dstNode);
+		builder.addConnection(srcNode, dstNode, offset);
 	}
 
 	private GNode addNode(GNode n) {
-		GModelProvider.instance().getNodes().add(n);
-		GModelProvider.instance().getNodeMap().put(n.getId(), n);
+		builder.addNode(n);
+		if (unitKey != null && !(n instanceof GPackageNode)) {
+			builder.addUnitNode(unitKey, n);
+		}
 		return n;
 	}
 }
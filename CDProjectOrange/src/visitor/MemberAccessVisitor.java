@@ -0,0 +1,159 @@
+/*
+ * @(#) MemberAccessVisitor.java
+ *
+ * Copyright 2015-2018 The Software Analysis Laboratory
+ * Computer Science, The University of Nebraska at Omaha
+ * 6001 Dodge Street, Omaha, NE 68182.
+ */
+package visitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IPackageBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+
+import graph.model.GSymbolTable;
+
+/**
+ * Counts, for every method of a compilation unit, the field accesses and method invocations
+ * it makes, grouped by the class declaring the accessed member. Only members of classes from
+ * the analyzed source are counted. Methods of anonymous classes count toward the enclosing
+ * method. Class and method keys are derived as in DeclarationVisitor.
+ */
+public class MemberAccessVisitor extends ASTVisitor {
+	/**
+	 * The accesses of one method, with classKeys[i] accessed counts[i] times.
+	 */
+	public static class Accesses {
+		public final int   methodKey, classKey;
+		public final int[] classKeys, counts;
+
+		Accesses(int methodKey, int classKey, int[] classKeys, int[] counts) {
+			this.methodKey = methodKey;
+			this.classKey = classKey;
+			this.classKeys = classKeys;
+			this.counts = counts;
+		}
+	}
+
+	private final GSymbolTable symbols = GSymbolTable.instance();
+	private final String defaultPrjName;
+	private final List<Accesses> result = new ArrayList<Accesses>();
+	private final Deque<int[]> methods = new ArrayDeque<int[]>();
+	private final Deque<Map<Integer, int[]>> counts = new ArrayDeque<Map<Integer, int[]>>();
+
+	public MemberAccessVisitor() {
+		this(null);
+	}
+
+	/**
+	 * @param defaultPrjName the project name used when the bindings have no Java element,
+	 *                       as for units parsed outside the workspace.
+	 */
+	public MemberAccessVisitor(String defaultPrjName) {
+		this.defaultPrjName = defaultPrjName;
+	}
+
+	/**
+	 * @return the accesses of every method visited so far.
+	 */
+	public List<Accesses> getAccesses() {
+		return result;
+	}
+
+	@Override
+	public boolean visit(MethodDeclaration methodDecl) {
+		IMethodBinding rBinding = methodDecl.resolveBinding();
+		if (rBinding != null && !rBinding.getDeclaringClass().isAnonymous()) {
+			int classKey = classKey(rBinding.getDeclaringClass());
+			methods.push(new int[] { symbols.key(classKey, rBinding.getName()), classKey });
+			counts.push(new HashMap<Integer, int[]>());
+		}
+		return super.visit(methodDecl);
+	}
+
+	@Override
+	public void endVisit(MethodDeclaration methodDecl) {
+		IMethodBinding rBinding = methodDecl.resolveBinding();
+		if (rBinding == null || rBinding.getDeclaringClass().isAnonymous()) {
+			return;
+		}
+		int[] method = methods.pop();
+		Map<Integer, int[]> methodCounts = counts.pop();
+		int[] classKeys = new int[methodCounts.size()], classCounts = new int[methodCounts.size()];
+		int i = 0;
+		for (Map.Entry<Integer, int[]> e : methodCounts.entrySet()) {
+			classKeys[i] = e.getKey();
+			classCounts[i++] = e.getValue()[0];
+		}
+		result.add(new Accesses(method[0], method[1], classKeys, classCounts));
+	}
+
+	@Override
+	public boolean visit(MethodInvocation node) {
+		IMethodBinding mBinding = node.resolveMethodBinding();
+		if (mBinding != null) {
+			count(mBinding.getMethodDeclaration().getDeclaringClass());
+		}
+		return super.visit(node);
+	}
+
+	@Override
+	public boolean visit(SuperMethodInvocation node) {
+		IMethodBinding mBinding = node.resolveMethodBinding();
+		if (mBinding != null) {
+			count(mBinding.getMethodDeclaration().getDeclaringClass());
+		}
+		return super.visit(node);
+	}
+
+	/**
+	 * Field references appear as simple names, whether plain, qualified or in a field access.
+	 */
+	@Override
+	public boolean visit(SimpleName node) {
+		IBinding binding = node.resolveBinding();
+		if (binding instanceof IVariableBinding && ((IVariableBinding) binding).isField() && !node.isDeclaration()) {
+			count(((IVariableBinding) binding).getVariableDeclaration().getDeclaringClass());
+		}
+		return super.visit(node);
+	}
+
+	private void count(ITypeBinding typeBinding) {
+		if (counts.isEmpty() || typeBinding == null || !typeBinding.isFromSource() //
+				|| typeBinding.isAnonymous() || typeBinding.getPackage() == null) {
+			return;
+		}
+		int classKey = classKey(typeBinding.getErasure());
+		int[] count = counts.peek().get(classKey);
+		if (count == null) {
+			counts.peek().put(classKey, count = new int[1]);
+		}
+		count[0]++;
+	}
+
+	private int classKey(ITypeBinding typeBinding) {
+		IPackageBinding pkgBinding = typeBinding.getPackage();
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, projectName(pkgBinding)), pkgBinding.getName());
+		return symbols.key(pkgKey, typeBinding.getName());
+	}
+
+	private String projectName(IPackageBinding pkgBinding) {
+		IJavaElement pkgElem = pkgBinding.getJavaElement();
+		return (pkgElem == null) ? defaultPrjName : pkgElem.getJavaProject().getElementName();
+	}
+}
@@ -18,19 +18,25 @@ import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import graph.model.GClassNode;
-import graph.model.GConnection;
 import graph.model.GMethodNode;
+import graph.model.GModelBuilder;
 import graph.model.GNode;
 import graph.model.GPackageNode;
+import graph.model.GSymbolTable;
 import graph.model.GVariableNode;
-import graph.provider.GModelProvider;
 
 public class ViewNodeVisitor extends ASTVisitor {
+	private final GModelBuilder builder;
+	private final GSymbolTable symbols = GSymbolTable.instance();
 	private String prjName;
 	private String pkgName;
 	private String className;
 	private String methodName;
 
+	public ViewNodeVisitor(GModelBuilder builder) {
+		this.builder = builder;
+	}
+
 	public boolean visit(PackageDeclaration pkgDecl) {
 		insertPackageNode(pkgDecl);
 		return super.visit(pkgDecl);
@@ -40,9 +46,10 @@ public class ViewNodeVisitor extends ASTVisitor {
 		IPackageBinding rBinding = pkgDecl.resolveBinding();
 		String prjName = rBinding.getJavaElement().getJavaProject().getElementName();
 		String nodeName = pkgDecl.getName().getFullyQualifiedName();
-		String id = prjName + "." + nodeName;
-		if (GModelProvider.instance().getNodeMap().containsKey(id) == false) {
-			addNode(new GPackageNode(id, nodeName, prjName));
+		int prjKey = symbols.key(GSymbolTable.NO_KEY, prjName);
+		int key = symbols.key(prjKey, nodeName);
+		if (builder.containsNode(key) == false) {
+			addNode(new GPackageNode(key, nodeName, prjKey));
 		}
 	}
 
@@ -56,7 +63,7 @@ public class ViewNodeVisitor extends ASTVisitor {
 			return false;
 		}
 		GNode typeNode = insertTypeNode(typeDecl);
-		GNode pkgGNode = GModelProvider.instance().getNodeMap().get(typeNode.getParent());
+		GNode pkgGNode = builder.getNode(typeNode.getParentKey());
 		if (pkgGNode == null) {
 			throw new RuntimeException();
 		}
@@ -70,8 +77,9 @@ public class ViewNodeVisitor extends ASTVisitor {
 		String pkgName = rBinding.getPackage().getName();
 
 		String typeName = typeDecl.getName().getFullyQualifiedName();
-		String id = prjName + "." + pkgName + "." + typeName;
-		GClassNode n = new GClassNode(id, typeName, prjName + "." + pkgName);
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, prjName), pkgName);
+		GClassNode n = new GClassNode(symbols.key(pkgKey, typeName), typeName, pkgKey);
+		n.setPrjName(prjName);
 		n.setPkgName(pkgName);
 		return addNode(n);
 	}
@@ -82,7 +90,7 @@ public class ViewNodeVisitor extends ASTVisitor {
 			return false;
 		}
 		GMethodNode methodNode = (GMethodNode) insertMethodNode(methodDecl);
-		GNode typeNode = GModelProvider.instance().getNodeMap().get(methodNode.getParent());
+		GNode typeNode = builder.getNode(methodNode.getParentKey());
 		if (typeNode == null) {
 			throw new RuntimeException();
 		}
@@ -98,9 +106,9 @@ public class ViewNodeVisitor extends ASTVisitor {
 		String className = typeBinding.getName();
 
 		String methodName = methodDecl.getName().getFullyQualifiedName();
-		String parent = prjName + "." + pkgName + "." + className;
-		String id = parent + "." + methodName;
-		GMethodNode n = new GMethodNode(id, methodName, parent);
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, prjName), pkgName);
+		int classKey = symbols.key(pkgKey, className);
+		GMethodNode n = new GMethodNode(symbols.key(classKey, methodName), methodName, classKey);
 		n.setPrjName(prjName).setPkgName(pkgName).setClassName(className);
 		return addNode(n);
 	}
@@ -108,7 +116,7 @@ public class ViewNodeVisitor extends ASTVisitor {
 	@Override
 	public boolean visit(VariableDeclarationFragment node) {
 		GNode varNode = insertVariableNode(node);
-		GNode methodNode = GModelProvider.instance().getNodeMap().get(varNode.getParent());
+		GNode methodNode = builder.getNode(varNode.getParentKey());
 		if (methodNode == null) {
 			System.out.println(varNode.getParent());
 			return false;		
@@ -125,24 +133,19 @@ public class ViewNodeVisitor extends ASTVisitor {
 		String prjName = typeBinding.getPackage().getJavaElement().getJavaProject().getElementName();
 		String pkgName = typeBinding.getPackage().getName();
 		String varName = varDecl.getName().getFullyQualifiedName() + ":" + pkgName + "." + className;
-		String parent = prjName + "." + pkgName + "." + className + "." + methodName;
-		String id = parent + "." + methodName + "." + varName;
-		GVariableNode n = new GVariableNode(id, varName, parent);
+		int pkgKey = symbols.key(symbols.key(GSymbolTable.NO_KEY, prjName), pkgName);
+		int methodKey = symbols.key(symbols.key(pkgKey, className), methodName);
+		GVariableNode n = new GVariableNode(symbols.key(methodKey, methodName + "." + varName), varName, methodKey);
 		n.setPrjName(prjName).setPkgName(pkgName).setClassName(className).setMethodName(methodName);
 		return addNode(n);
 }
 
 	private void addConnection(GNode srcNode, GNode dstNode, int offset) {
-		String conId = srcNode.getId() + dstNode.getId();
-		String conLabel = "offset: " + offset;
-		GConnection con = new GConnection(conId, conLabel, srcNode, dstNode);
-		GModelProvider.instance().getConnections().add(con);
-		srcNode.getConnectedTo().add(dstNode);
+		builder.addConnection(srcNode, dstNode, offset);
 	}
 
 	private GNode addNode(GNode n) {
-		GModelProvider.instance().getNodes().add(n);
-		GModelProvider.instance().getNodeMap().put(n.getId(), n);
+		builder.addNode(n);
 		return n;
 	}
 	